@@ -0,0 +1,189 @@
+package bayou.od;
+
+import bayou.jtype.ClassType;
+import bayou.od.OD.Binding;
+import bayou.od.OD.BindingBuilder;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Local bindings carried by a `ScopedValue` (JDK 21 with <code>--enable-preview</code> only).
+ * <p>
+ *     This is an alternative to the thread-local bindings of {@link OD.Local}.
+ *     Local bindings are collected in a {@link Scope}, then the Scope runs a task;
+ *     the bindings are visible to lookups during the task. For example
+ * </p>
+ * <pre>
+ *     ScopedLocal.Scope scope = ScopedLocal.scope();
+ *     scope.bind(Foo.class).to(foo2);
+ *     scope.run( ()-&gt;
+ *     {
+ *         OD.get(Foo.class);  // sees `foo2`
+ *     });
+ * </pre>
+ * <p>
+ *     The bindings of a Scope are frozen when it runs a task, and carried by a `ScopedValue`.
+ *     Therefore they are inherited by subtasks forked by a `StructuredTaskScope`, without copying.
+ *     Threads running the same Scope share the same bindings and the same lookup cache.
+ *     A thread that never binds locally has no per-thread storage for local bindings.
+ * </p>
+ * <p>
+ *     Thread-local bindings of the current thread take precedence over scoped bindings.
+ *     They are included in a Scope created by {@link #scope()}, and they are hidden while the Scope runs a task.
+ *     Any thread-local bindings changed by the task are restored when the task is done.
+ * </p>
+ * <p>
+ *     This class requires `ScopedValue`, a preview API in JDK 21.
+ *     The module is compiled with preview features enabled; its classes load only on JDK 21,
+ *     run with <code>--enable-preview</code>, not on later JDKs.
+ * </p>
+ */
+public final class ScopedLocal
+{
+    private ScopedLocal(){}
+
+    static final ScopedValue<LocalBindings> FRAME = ScopedValue.newInstance();
+
+    static
+    {
+        // FRAME can only be bound by a Scope; the carrier is installed before that.
+        LocalBindings.carrier = new LocalBindings.Carrier()
+        {
+            public LocalBindings current()
+            {
+                return FRAME.isBound() ? FRAME.get() : null;
+            }
+        };
+    }
+
+    /**
+     * Create a Scope, starting with the current local bindings.
+     * <p>
+     *     The current local bindings are thread-local bindings of the current thread,
+     *     or, if there is none, the bindings of the Scope that is running the current task.
+     * </p>
+     */
+    static public Scope scope()
+    {
+        return new Scope(LocalBindings.current());
+    }
+
+    /**
+     * Create a Scope with no bindings.
+     */
+    static public Scope emptyScope()
+    {
+        return new Scope(null);
+    }
+
+    /**
+     * A list of local bindings, to run tasks with.
+     * <p>
+     *     A Scope is started by {@link ScopedLocal#scope()}.
+     *     Bindings can be added to the Scope, then the Scope can run any number of tasks, in any threads.
+     * </p>
+     * <p>
+     *     Bindings added after a task is run do not affect tasks that are already running.
+     * </p>
+     */
+    static public final class Scope
+    {
+        // null, or a frozen base, or an unfrozen copy with our bindings
+        LocalBindings lb;
+
+        Scope(LocalBindings base)
+        {
+            this.lb = (base==null)? null : base.freeze();
+        }
+
+        final OD.BindingTarget target = new OD.BindingTarget()
+        {
+            public void add(Binding binding){ add0(binding); }
+        };
+
+        synchronized void add0(Binding binding)
+        {
+            if(lb==null)
+                lb = new LocalBindings();
+            else if(lb.frozen)
+                lb = lb.thaw();
+            lb.add0(binding);
+        }
+
+        synchronized LocalBindings frame()
+        {
+            return (lb==null)? LocalBindings.EMPTY : lb.freeze();
+        }
+
+        /**
+         * To add a binding to this Scope.
+         * <p>
+         *     This method is equivalent to {@link #bind(ClassType)}
+         *     by wrapping the `Class` as `ClassType`; see {@link ClassType#of(Class)}.
+         * </p>
+         */
+        public <T> BindingBuilder<T> bind(Class<T> clazz){ return bind(ClassType.of(clazz)); }
+
+        /**
+         * To add a binding to this Scope.
+         * <p>
+         *     This method return a builder; when the builder finishes,
+         *     a binding is created and added to this Scope.
+         * </p>
+         */
+        public <T> BindingBuilder<T> bind(ClassType<T> type){ return new BindingBuilder<T>(target, type); }
+
+        /**
+         * Add the binding to this Scope.
+         * @return `this` for method chaining
+         */
+        public Scope bind(Binding binding)
+        {
+            add0(binding);
+            return this;
+        }
+
+        /**
+         * Run the task with the bindings of this Scope.
+         */
+        public void run(Runnable task)
+        {
+            LocalBindings frame = frame();
+
+            // thread-local bindings would take precedence; hide them during the task.
+            LocalBindings tl = LocalBindings.threadLocal();
+            if(tl!=null)
+                LocalBindings.setThreadLocal(null);
+            try
+            {
+                ScopedValue.where(FRAME, frame).run(task);
+            }
+            finally
+            {
+                // restore, if the task itself changed thread-local bindings, or if we hid them.
+                // if neither, the thread-local is not touched.
+                LocalBindings.setThreadLocal(tl);
+            }
+        }
+
+        /**
+         * Call the task with the bindings of this Scope.
+         */
+        public <V> V call(final Callable<V> task) throws Exception
+        {
+            final Object[] result = {null};
+            final Exception[] error = {null};
+            run(() ->
+            {
+                try
+                {   result[0] = task.call();   }
+                catch (Exception e)
+                {   error[0] = e;   }
+            });
+            if(error[0]!=null)
+                throw error[0];
+            return OD.cast(result[0]);
+        }
+    }
+
+}
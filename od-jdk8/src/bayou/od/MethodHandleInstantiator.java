@@ -0,0 +1,90 @@
+package bayou.od;
+
+import bayou.od.OD.Supplier;
+
+import java.lang.invoke.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+
+// loaded by ConstructorSupplier if this module is on the classpath.
+// instantiates objects without reflection: spin a Supplier class by LambdaMetafactory,
+// whose get() is `new B(a1..ak)` in bytecode, with a1..ak captured in fields.
+// the class is spun once per constructor; each supplier is an instance of it, capturing its own a1..ak.
+//
+// if the constructor is not accessible to such a class, return null; ConstructorSupplier uses reflection.
+// (invoking a non-constant MethodHandle is not faster than reflection.)
+class MethodHandleInstantiator implements ConstructorSupplier.Instantiator
+{
+    static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    public <T> ConstructorSupplier.Factory<T> factory(Constructor<T> constructor) throws Exception
+    {
+        if(!canSpin(constructor))
+            return null;
+
+        MethodHandle mh = lookup.unreflectConstructor(constructor);
+        final MethodHandle factory = spin(constructor, mh); // throws
+        return new ConstructorSupplier.Factory<T>()
+        {
+            public Supplier<T> supplier(Object[] args) throws Exception
+            {
+                try
+                {
+                    @SuppressWarnings("unchecked")
+                    Supplier<T> supplier = (Supplier<T>)factory.invokeWithArguments(args);
+                    return supplier;
+                }
+                catch (Exception e)
+                {
+                    throw e;
+                }
+                catch (Throwable t) // Error; caller falls back to reflection
+                {
+                    throw new Exception(t);
+                }
+            }
+        };
+    }
+
+    // the spun class is defined by our class loader, in our package.
+    // it must be able to access the class and the constructor by their names.
+    static boolean canSpin(Constructor<?> constructor)
+    {
+        if(!Modifier.isPublic(constructor.getModifiers()))
+            return false;
+        for(Class<?> c = constructor.getDeclaringClass(); c!=null; c=c.getEnclosingClass())
+            if(!Modifier.isPublic(c.getModifiers()))
+                return false;
+        if(!isVisible(constructor.getDeclaringClass()))
+            return false;
+        for(Class<?> c : constructor.getParameterTypes())
+            if(!c.isPrimitive() && !isVisible(c))
+                return false;
+        // a Supplier can't throw checked exceptions; they'd be thrown as is, instead of wrapped.
+        for(Class<?> c : constructor.getExceptionTypes())
+            if(!RuntimeException.class.isAssignableFrom(c) && !Error.class.isAssignableFrom(c))
+                return false;
+        return true;
+    }
+    static boolean isVisible(Class<?> clazz)
+    {
+        try
+        {
+            return Class.forName(clazz.getName(), false, MethodHandleInstantiator.class.getClassLoader())==clazz;
+        }
+        catch (ClassNotFoundException e) // e.g. app class in a child class loader
+        {
+            return false;
+        }
+    }
+
+    // return (a1..ak) -> Supplier, capturing a1..ak
+    static MethodHandle spin(Constructor<?> constructor, MethodHandle mh) throws Exception
+    {
+        MethodType factoryType = MethodType.methodType(Supplier.class, constructor.getParameterTypes());
+        CallSite site = LambdaMetafactory.metafactory(lookup,
+            "get", factoryType, MethodType.methodType(Object.class),
+            mh, MethodType.methodType(constructor.getDeclaringClass()));
+        return site.getTarget();
+    }
+}
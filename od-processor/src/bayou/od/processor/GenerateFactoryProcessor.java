@@ -0,0 +1,339 @@
+package bayou.od.processor;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Annotation processor for `bayou.od.GenerateFactory`.
+ * <p>
+ *     For each annotated class <code>B</code>, generate <code>B$ODFactory</code>, a subclass of
+ *     `bayou.od.GeneratedFactory`, in the same package.
+ *     The type-arg constructor of <code>B</code>, or the injecting constructor, is found by the same rules
+ *     as in runtime (see `bayou.od.OD.BindingBuilder.to(Class)`); the generated factory describes it,
+ *     and invokes it in plain Java code. Dependencies of an injecting constructor are described by
+ *     type strings, which are parsed at runtime by `bayou.jtype.ClassType.parse()`.
+ * </p>
+ */
+@SupportedAnnotationTypes(GenerateFactoryProcessor.ANNOTATION)
+public class GenerateFactoryProcessor extends AbstractProcessor
+{
+    static final String ANNOTATION = "bayou.od.GenerateFactory";
+    static final String SUFFIX = "$ODFactory"; // GeneratedFactory.SUFFIX
+
+    // valid Ci of type-arg constructor parameter Ai=Ci<Ui>. see TypeArgConstructor
+    static final List<String> validCi = Arrays.asList(
+        "java.lang.Class", "bayou.jtype.ClassType", "bayou.jtype.ArrayType", "bayou.jtype.ReferenceType");
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        for(TypeElement annotation : annotations)
+            for(Element element : roundEnv.getElementsAnnotatedWith(annotation))
+                process(element);
+        return true;
+    }
+
+    void process(Element element)
+    {
+        if(element.getKind()!=ElementKind.CLASS)
+        {
+            error(element, "@GenerateFactory is only applicable to classes");
+            return;
+        }
+        TypeElement classB = (TypeElement)element;
+        if(classB.getModifiers().contains(Modifier.ABSTRACT))
+        {
+            error(classB, "@GenerateFactory class must not be abstract");
+            return;
+        }
+        for(Element e=classB; e instanceof TypeElement; e=e.getEnclosingElement())
+        {
+            if(e.getModifiers().contains(Modifier.PRIVATE))
+            {
+                error(classB, "@GenerateFactory class must not be private, or nested in a private class");
+                return;
+            }
+            if(e.getEnclosingElement() instanceof TypeElement && !e.getModifiers().contains(Modifier.STATIC))
+            {
+                error(classB, "@GenerateFactory class must be a top level class, or a static member class");
+                return;
+            }
+        }
+
+        ExecutableElement cons = findTypeArgConstructor(classB);  // error reported if null
+        if(cons==null)
+            return;
+        if(cons.getModifiers().contains(Modifier.PRIVATE))
+        {
+            error(cons, "type-arg constructor, or injecting constructor, must not be private, for @GenerateFactory");
+            return;
+        }
+
+        try
+        {
+            generate(classB, cons);
+        }
+        catch (IOException e)
+        {
+            error(classB, "unable to generate factory: "+e);
+        }
+    }
+
+    // same rules as TypeArgConstructor.of()
+    ExecutableElement findTypeArgConstructor(TypeElement classB)
+    {
+        List<? extends TypeParameterElement> V1_Vm = classB.getTypeParameters();
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(classB.getEnclosedElements());
+
+        if(V1_Vm.isEmpty()) // the default constructor
+        {
+            for(ExecutableElement cons : constructors)
+                if(cons.getParameters().isEmpty())
+                    return cons;
+            ExecutableElement injecting = findInjectingConstructor(classB);
+            if(injecting!=null)
+                return injecting;
+            error(classB, "no default constructor, or injecting constructor, found for "+classB);
+            return null;
+        }
+
+        int maxK = -1;
+        ArrayList<ExecutableElement> candidates = new ArrayList<ExecutableElement>();
+        for(ExecutableElement cons : constructors)
+        {
+            if(argU(cons, V1_Vm, false)==null)
+                continue;
+            int k = cons.getParameters().size();
+            if(k < maxK)
+                continue;
+            if(k > maxK)
+            {
+                maxK = k;
+                candidates.clear();
+            }
+            candidates.add(cons);
+        }
+        if(candidates.size()==0)
+        {
+            ExecutableElement injecting = findInjectingConstructor(classB);
+            if(injecting!=null)
+                return injecting;
+            error(classB, "no type-arg constructor, or injecting constructor, found for "+classB);
+            return null;
+        }
+        if(candidates.size()>1)
+        {
+            error(classB, String.format("multiple type-arg constructors found: %s, %s", candidates.get(0), candidates.get(1)));
+            return null;
+        }
+        return candidates.get(0);
+    }
+
+    // the sole constructor, with dependency parameters; same rules as TypeArgConstructor.ofInjecting().
+    // null if not applicable. classB is not an inner class; see process()
+    ExecutableElement findInjectingConstructor(TypeElement classB)
+    {
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(classB.getEnclosedElements());
+        if(constructors.size()!=1)
+            return null;
+        ExecutableElement cons = constructors.get(0);
+        if(argU(cons, classB.getTypeParameters(), true)==null)
+            return null;
+        return cons;
+    }
+
+    // if Ai=Ci<Vj>, argU[i]=j. if `injecting`, and Ai is a dependency, argU[i]=-1; see typeString().
+    // return null if `cons` is not a candidate type-arg constructor, or injecting constructor.
+    static int[] argU(ExecutableElement cons, List<? extends TypeParameterElement> V1_Vm, boolean injecting)
+    {
+        List<? extends VariableElement> params = cons.getParameters();
+        int[] argU = new int[params.size()];
+        for(int i=0; i<argU.length; i++)
+        {
+            TypeMirror Ai = params.get(i).asType();
+            int j = argU(Ai, V1_Vm);
+            if(j<0)
+            {
+                if(!injecting || Ai.getKind()!=TypeKind.DECLARED || typeString(Ai)==null)
+                    return null;
+                j = -1; // a dependency
+            }
+            argU[i] = j;
+        }
+        return argU;
+    }
+    // if Ai=Ci<Vj>, return j; otherwise a negative number
+    static int argU(TypeMirror Ai, List<? extends TypeParameterElement> V1_Vm)
+    {
+        if(Ai.getKind()!=TypeKind.DECLARED)
+            return -2;
+        DeclaredType dAi = (DeclaredType)Ai;
+        if(!validCi.contains(Ci(dAi)))
+            return -2;
+        if(dAi.getTypeArguments().size()!=1) // no Ui
+            return -2;
+        TypeMirror Ui = dAi.getTypeArguments().get(0);
+        if(Ui.getKind()!=TypeKind.TYPEVAR)
+            return -2;
+        int j = V1_Vm.indexOf(((TypeVariable)Ui).asElement());
+        return (j<0)? -2 : j;
+    }
+
+    // a dependency type in the format of ClassType.toString(true), parsed by ClassType.parse() at runtime.
+    // e.g. java.util.List<? extends a.b.Outer$Nested>. args of enclosing types come first,
+    // e.g. a.b.Outer$Inner<T, S> for Outer<T>.Inner<S>. return null if it contains type variables.
+    static String typeString(TypeMirror type)
+    {
+        switch(type.getKind())
+        {
+            case DECLARED:
+            {
+                DeclaredType declared = (DeclaredType)type;
+                ArrayList<String> args = new ArrayList<String>();
+                if(!typeArgs(declared, args))
+                    return null;
+                StringBuilder sb = new StringBuilder(binaryName((TypeElement)declared.asElement()));
+                for(int i=0; i<args.size(); i++)
+                    sb.append(i==0? "<" : ", ").append(args.get(i));
+                if(!args.isEmpty())
+                    sb.append('>');
+                return sb.toString();
+            }
+            case ARRAY:
+            {
+                String component = typeString(((ArrayType)type).getComponentType());
+                return (component==null)? null : component+"[]";
+            }
+            case WILDCARD:
+            {
+                WildcardType wildcard = (WildcardType)type;
+                TypeMirror bound = wildcard.getExtendsBound();
+                String prefix = "? extends ";
+                if(bound==null)
+                {
+                    bound = wildcard.getSuperBound();
+                    prefix = "? super ";
+                }
+                if(bound==null)
+                    return "?";
+                String string = typeString(bound);
+                return (string==null)? null : prefix+string;
+            }
+            default:
+                if(type.getKind().isPrimitive()) // an array component
+                    return type.getKind().name().toLowerCase(Locale.ENGLISH);
+                return null; // type var, etc.
+        }
+    }
+    static boolean typeArgs(DeclaredType type, List<String> args)
+    {
+        TypeMirror enclosing = type.getEnclosingType();
+        if(enclosing.getKind()==TypeKind.DECLARED && !typeArgs((DeclaredType)enclosing, args))
+            return false;
+        for(TypeMirror arg : type.getTypeArguments())
+        {
+            String string = typeString(arg);
+            if(string==null)
+                return false;
+            args.add(string);
+        }
+        return true;
+    }
+    // e.g. a.b.Outer$Nested, for Class.forName()
+    static String binaryName(TypeElement element)
+    {
+        Element enclosing = element.getEnclosingElement();
+        if(enclosing instanceof TypeElement)
+            return binaryName((TypeElement)enclosing) + "$" + element.getSimpleName();
+        return element.getQualifiedName().toString();
+    }
+
+    static String Ci(DeclaredType Ai)
+    {
+        return ((TypeElement)Ai.asElement()).getQualifiedName().toString();
+    }
+
+    void generate(TypeElement classB, ExecutableElement cons) throws IOException
+    {
+        String packageName = processingEnv.getElementUtils().getPackageOf(classB).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(classB).toString();
+        String factoryName = (packageName.isEmpty()? binaryName : binaryName.substring(packageName.length()+1)) + SUFFIX;
+        String sourceNameB = classB.getQualifiedName().toString();
+
+        List<? extends VariableElement> params = cons.getParameters();
+        int[] argU = argU(cons, classB.getTypeParameters(), true); // not null; see findTypeArgConstructor()
+
+        StringBuilder argC = new StringBuilder();
+        StringBuilder argUs = new StringBuilder();
+        StringBuilder argDep = new StringBuilder();
+        boolean injecting = false;
+        StringBuilder args = new StringBuilder();
+        for(int i=0; i<params.size(); i++)
+        {
+            TypeMirror Ai = params.get(i).asType();
+            String Ci = Ci((DeclaredType)Ai);
+            String sep = (i==0)? "" : ", ";
+            argC.append(sep).append(Ci).append(".class");
+            argUs.append(sep).append(argU[i]);
+            if(argU[i]==-1)
+            {
+                argDep.append(sep).append('"').append(typeString(Ai)).append('"');
+                injecting = true;
+            }
+            else
+                argDep.append(sep).append("null");
+            args.append(sep).append("(").append(Ci).append(")args[").append(i).append("]");
+        }
+        String argDeps = injecting? ", new String[]{"+argDep+"}" : "";
+
+        String qualifiedName = packageName.isEmpty()? factoryName : packageName+"."+factoryName;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, classB);
+        Writer out = file.openWriter();
+        try
+        {
+            if(!packageName.isEmpty())
+                out.write("package "+packageName+";\n\n");
+            out.write("// generated by "+GenerateFactoryProcessor.class.getName()+". do not edit.\n");
+            out.write("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+            out.write("public final class "+factoryName+" extends bayou.od.GeneratedFactory\n");
+            out.write("{\n");
+            out.write("    public "+factoryName+"()\n");
+            out.write("    {\n");
+            out.write("        super("+sourceNameB+".class, new Class[]{"+argC+"}, new int[]{"+argUs+"}"+argDeps+");\n");
+            out.write("    }\n\n");
+            out.write("    protected Object newInstance(Object[] args) throws Exception\n");
+            out.write("    {\n");
+            out.write("        return new "+sourceNameB+"("+args+");\n");
+            out.write("    }\n");
+            out.write("}\n");
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    void error(Element element, String message)
+    {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,163 @@
+package bayou.od.processor;
+
+import bayou.jtype.ClassType;
+import bayou.jtype.JavaType;
+import bayou.od.GenerateFactory;
+import bayou.od.OD;
+import org.junit.Test;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class GenerateFactoryProcessorTest
+{
+    static final String SOURCE = ""
+        + "package p;\n"
+        + "import bayou.od.GenerateFactory;\n"
+        + "import java.util.*;\n"
+        + "public class Outer\n"
+        + "{\n"
+        + "    public static class Dep {}\n"
+        + "    public static class Box<T> { public class Inner<S> {} }\n"
+        + "    @GenerateFactory\n"
+        + "    public static class Impl<T>\n"
+        + "    {\n"
+        + "        public final Class<T> clazz; public final Dep dep; public final List<Dep> deps;\n"
+        + "        public Impl(Class<T> clazz, Dep dep, List<Dep> deps)\n"
+        + "        { this.clazz = clazz; this.dep = dep; this.deps = deps; }\n"
+        + "    }\n"
+        + "    @GenerateFactory\n"
+        + "    public static class Wide\n"
+        + "    {\n"
+        + "        public Wide(Map<String, ? super Dep[]> map, Box<int[]>.Inner<List<?>> inner) {}\n"
+        + "    }\n"
+        + "}\n";
+
+    // a dependency type must not contain type variables
+    static final String VARS_SOURCE = ""
+        + "package p;\n"
+        + "@bayou.od.GenerateFactory\n"
+        + "public class Vars<T>\n"
+        + "{\n"
+        + "    public Vars(java.util.List<T> list) {}\n"
+        + "}\n";
+
+    // compile the source of the class with the processor. return the output dir
+    static File compile(String className, String sourceCode, List<Diagnostic<? extends JavaFileObject>> errors)
+        throws IOException
+    {
+        File dir = File.createTempFile("od-processor-test", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        File source = new File(dir, className+".java");
+        Writer out = new FileWriter(source);
+        try
+        {
+            out.write(sourceCode);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        String classpath = path(GenerateFactory.class) + File.pathSeparator + path(ClassType.class);
+        List<String> options = Arrays.asList("-classpath", classpath, "-d", dir.getPath(), "-s", dir.getPath());
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null,
+            fileManager.getJavaFileObjects(source));
+        task.setProcessors(Collections.singleton(new GenerateFactoryProcessor()));
+        task.call();
+        fileManager.close();
+        for(Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics())
+            if(d.getKind()==Diagnostic.Kind.ERROR)
+                errors.add(d);
+        return dir;
+    }
+    static String path(Class<?> clazz)
+    {
+        return clazz.getProtectionDomain().getCodeSource().getLocation().getPath();
+    }
+
+    static String read(File file) throws IOException
+    {
+        Scanner scanner = new Scanner(file, "UTF-8");
+        try
+        {
+            return scanner.useDelimiter("\\A").next();
+        }
+        finally
+        {
+            scanner.close();
+        }
+    }
+
+    @Test
+    public void injectingConstructor() throws Exception
+    {
+        ArrayList<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+        File dir = compile("Outer", SOURCE, errors);
+        assertEquals(errors.toString(), 0, errors.size());
+
+        ClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader());
+
+        // dependency type strings in generated code parse to the parameter types
+        String factory = read(new File(dir, "p/Outer$Wide$ODFactory.java"));
+        Matcher matcher = Pattern.compile("new String\\[\\]\\{\"(.*)\", \"(.*)\"\\}").matcher(factory);
+        assertTrue(factory, matcher.find());
+        Class<?> wide = loader.loadClass("p.Outer$Wide");
+        java.lang.reflect.Type[] params = wide.getConstructors()[0].getGenericParameterTypes();
+        for(int i=0; i<2; i++)
+            assertEquals(JavaType.convertFrom(params[i]), ClassType.parse(matcher.group(i+1), loader));
+
+        // the factory is found at runtime; dependencies are resolved by OD.get()
+        Class<?> impl = loader.loadClass("p.Outer$Impl");
+        Class<?> dep = loader.loadClass("p.Outer$Dep");
+        assertTrue(String.valueOf(Class.forName("p.Outer$Impl$ODFactory", true, loader).newInstance())
+            .contains("argDep=[null, p.Outer$Dep, java.util.List<p.Outer$Dep>]"));
+
+        ClassType<?> implString = ClassType.of(impl, ClassType.of(String.class));
+        bindToImpl(implString, impl);
+        Object depObject = dep.newInstance();
+        List<Object> deps = Collections.singletonList(depObject);
+        bindTo(ClassType.of(dep), depObject);
+        bindTo(ClassType.parse("java.util.List<p.Outer$Dep>", loader), deps);
+
+        Object instance = OD.get(implString);
+        assertSame(String.class, impl.getField("clazz").get(instance));
+        assertSame(depObject, impl.getField("dep").get(instance));
+        assertSame(deps, impl.getField("deps").get(instance));
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> void bindToImpl(ClassType<T> type, Class<?> implClass)
+    {
+        OD.bind(type).to((Class<T>)implClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> void bindTo(ClassType<T> type, Object instance)
+    {
+        OD.bind(type).to((T)instance);
+    }
+
+    @Test
+    public void dependencyWithTypeVar() throws Exception
+    {
+        ArrayList<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+        compile("Vars", VARS_SOURCE, errors);
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue(errors.toString(), errors.get(0).getMessage(Locale.ENGLISH)
+            .contains("no type-arg constructor, or injecting constructor, found for p.Vars"));
+    }
+}
@@ -0,0 +1,80 @@
+package _bayou._tmp;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// memo of per-class values, computed on demand. thread-safe; concurrent computations are benign.
+//
+// must not prevent classes from being unloaded. on Java 7+, java.lang.ClassValue is used (see _ClassValueMemo).
+// otherwise, values are cached only for classes loaded by our class loader or its ancestors,
+// which live at least as long as we do; for other classes, values are computed on each call.
+public abstract class _ClassMemo<V>
+{
+    // return null if the value should not be cached
+    protected abstract V compute(Class<?> clazz);
+
+    interface Store<V>
+    {
+        V lookup(Class<?> clazz);
+    }
+
+    final Store<V> store;
+
+    protected _ClassMemo()
+    {
+        store = classValueAvailable ? new _ClassValueMemo<V>(this) : new MapStore<V>(this);
+    }
+
+    public V get(Class<?> clazz)
+    {
+        return store.lookup(clazz);
+    }
+
+    static final boolean classValueAvailable = classValueAvailable();
+    static boolean classValueAvailable()
+    {
+        try
+        {
+            Class.forName("java.lang.ClassValue");
+            return true;
+        }
+        catch (Throwable t) // Java 6
+        {
+            return false;
+        }
+    }
+
+    static class MapStore<V> implements Store<V>
+    {
+        final _ClassMemo<V> memo;
+        final ConcurrentHashMap<Class<?>, V> map = new ConcurrentHashMap<Class<?>, V>();
+
+        MapStore(_ClassMemo<V> memo)
+        {
+            this.memo = memo;
+        }
+
+        public V lookup(Class<?> clazz)
+        {
+            V value = map.get(clazz);
+            if(value==null)
+            {
+                value = memo.compute(clazz);
+                if(value!=null && isOurs(clazz))
+                    map.put(clazz, value);
+            }
+            return value;
+        }
+    }
+
+    // whether the class is loaded by our class loader or its ancestors
+    public static boolean isOurs(Class<?> clazz)
+    {
+        ClassLoader loader = clazz.getClassLoader();
+        if(loader==null) // bootstrap
+            return true;
+        for(ClassLoader ours = _ClassMemo.class.getClassLoader(); ours!=null; ours=ours.getParent())
+            if(ours==loader)
+                return true;
+        return false;
+    }
+}
@@ -0,0 +1,33 @@
+package _bayou._tmp;
+
+// Java 7+. only loaded if java.lang.ClassValue is available; see _ClassMemo
+class _ClassValueMemo<V> extends ClassValue<Object> implements _ClassMemo.Store<V>
+{
+    static final Object NONE = new Object(); // value is null, not cached
+
+    final _ClassMemo<V> memo;
+
+    _ClassValueMemo(_ClassMemo<V> memo)
+    {
+        this.memo = memo;
+    }
+
+    @Override
+    protected Object computeValue(Class<?> clazz)
+    {
+        V value = memo.compute(clazz);
+        return (value==null)? NONE : value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V lookup(Class<?> clazz)
+    {
+        Object value = get(clazz);
+        if(value==NONE)
+        {
+            remove(clazz); // compute again next time
+            return null;
+        }
+        return (V)value;
+    }
+}
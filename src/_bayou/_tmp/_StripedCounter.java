@@ -0,0 +1,39 @@
+package _bayou._tmp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// a counter that is incremented on hot paths by many threads, and read rarely, e.g. for statistics.
+// similar to java.util.concurrent.atomic.LongAdder (Java 8): a thread increments one of several cells,
+// chosen by its thread id, so that threads rarely contend on the same cache line. get() sums the cells;
+// it's not a snapshot if increments are in progress.
+public class _StripedCounter
+{
+    static final int PAD = 8; // longs per cell; one cell per 64-byte cache line
+    static final int N_CELLS = nCells(); // power of 2
+
+    static int nCells()
+    {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int n = 1;
+        while(n < 2*cpus && n < 16)
+            n <<= 1;
+        return n;
+    }
+
+    final AtomicLongArray cells = new AtomicLongArray(N_CELLS * PAD);
+
+    public void increment()
+    {
+        long id = Thread.currentThread().getId();
+        int cell = (int)((id * 0x9E3779B97F4A7C15L) >>> 40) & (N_CELLS-1);
+        cells.incrementAndGet(cell * PAD);
+    }
+
+    public long get()
+    {
+        long sum = 0;
+        for(int cell=0; cell<N_CELLS; cell++)
+            sum += cells.get(cell * PAD);
+        return sum;
+    }
+}
@@ -1,6 +1,7 @@
 package bayou.jtype;
 
 import _bayou._tmp._Array2ReadOnlyList;
+import _bayou._tmp._ClassMemo;
 
 import java.util.Collections;
 import java.util.List;
@@ -131,6 +132,36 @@ public abstract class ClassType<T> extends ReferenceType<T>
         return new ClassType.Impl<T>(false, clazz, args);
     }
 
+    /**
+     * Parse a type string to a ClassType, resolving classes with the class loader.
+     * <p>
+     *     For example
+     * </p>
+     * <pre>
+     *     ClassType.parse("java.util.Map&lt;java.lang.String, ? extends java.util.List&lt;int[]&gt;&gt;", loader);
+     * </pre>
+     * <p>
+     *     Class names must be fully qualified, except for classes in <code>java.lang</code>.
+     *     A nested class can be named as either <code>Outer.Nested</code> or <code>Outer$Nested</code>.
+     *     The format of {@link #toString(boolean) toString(true)} can be parsed.
+     * </p>
+     * <p>
+     *     The result is validated, as by {@link #of(Class, TypeArg...) of(Class, TypeArg...)}.
+     *     Results are cached; parsing the same string with the same loader again is cheap.
+     *     This is an alternative to type literals, e.g. for types declared in configuration files.
+     * </p>
+     * @param loader
+     *        the class loader to resolve class names; null for the bootstrap class loader.
+     * @throws IllegalArgumentException
+     *         if the string cannot be parsed, or a class cannot be found, or the type is not well formed.
+     */
+    static public ClassType<?> parse(String typeString, ClassLoader loader) throws IllegalArgumentException
+    {
+        if(typeString==null)
+            throw new IllegalArgumentException("typeString==null");
+        return TypeParser.parse(typeString, loader);
+    }
+
     /**
      * Create a ClassType, using type variables as type arguments.
      * <p>
@@ -171,24 +202,36 @@ public abstract class ClassType<T> extends ReferenceType<T>
      */
     protected ClassType()
     {
-        // the constructor will reflect on `this`, and extract `T`.
-        Class<?> thisClass = this.getClass();
-        ClassType<?> thisType = ClassType.withTypeVars(thisClass);
-        if(thisType.getTypeVars().size()>0)
-            throw new IllegalArgumentException("must not contain type parameters: "+thisType.ss());
-        ClassType<?> superType = TypeMath.getSuperType(thisType, ClassType.class);
-        if(superType.args.size()==0) // subclass extends raw ClassType
-            throw new IllegalArgumentException("this.getClass() must not extend raw ClassType: "+thisType.toString(true));
-        assert superType.clazz==ClassType.class && superType.args.size()==1;
-        TypeArg argT = superType.args.get(0);
-        if(!(argT instanceof ClassType)) // could be array, or even type variable; not supported
-            throw new IllegalArgumentException("T for ClassType<T> must be a class/interface type: T = " + argT);
-        ClassType<?> literal = (ClassType<?>)argT;
+        // the constructor will reflect on `this.getClass()`, and extract `T`. the result is cached per class,
+        // so a literal on a hot path, e.g. OD.get(new ClassType<List<Foo>>(){}), does no reflection after the 1st time.
+        ClassType<?> literal = literals.get(this.getClass()); // throws
         this.clazz = literal.clazz;
         this.args = literal.args;
+        this.vars = literal.vars;
         // no validation
     }
 
+    // literal subclass => the ClassType of T
+    static final _ClassMemo<ClassType<?>> literals = new _ClassMemo<ClassType<?>>()
+    {
+        protected ClassType<?> compute(Class<?> thisClass) throws IllegalArgumentException
+        {
+            ClassType<?> thisType = ClassType.withTypeVars(thisClass);
+            if(thisType.getTypeVars().size()>0)
+                throw new IllegalArgumentException("must not contain type parameters: "+thisType.ss());
+            ClassType<?> superType = TypeMath.getSuperType(thisType, ClassType.class);
+            if(superType.args.size()==0) // subclass extends raw ClassType
+                throw new IllegalArgumentException("this.getClass() must not extend raw ClassType: "+thisType.toString(true));
+            assert superType.clazz==ClassType.class && superType.args.size()==1;
+            TypeArg argT = superType.args.get(0);
+            if(!(argT instanceof ClassType)) // could be array, or even type variable; not supported
+                throw new IllegalArgumentException("T for ClassType<T> must be a class/interface type: T = " + argT);
+            ClassType<?> literal = (ClassType<?>)argT;
+            literal.getTypeVars(); // resolve it now, to be shared by instances
+            return literal;
+        }
+    };
+
     final Class clazz;
     final List<TypeArg> args;
     // if clazz is an inner member class, we merge all type args, including outer ones.
@@ -0,0 +1,84 @@
+package bayou.jtype;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentHashMap;
+import _bayou._tmp._StripedCounter;
+
+// K => JavaType, e.g. (String, ClassLoader) => ClassType, see TypeParser.
+//
+// the cache is static, and it must not keep classes, or their class loaders, from being unloaded.
+// values reference classes; they are softly referenced. keys must not reference classes strongly;
+// they can reference them by KeyRef, registered on `queue`, see TypeParser.Key.
+// an entry is removed after its key or its value is cleared; cleared entries are expunged on get() and put().
+class ConversionCache<K, V extends JavaType<?>>
+{
+    final String name;
+    final ConcurrentHashMap<K, ValueRef<V>> map = new ConcurrentHashMap<K, ValueRef<V>>();
+    final ReferenceQueue<Object> queue = new ReferenceQueue<Object>(); // cleared keys and values
+    final _StripedCounter hits = TypeMemo.countHits? new _StripedCounter() : null; // see TypeMemo
+    final _StripedCounter misses = new _StripedCounter();
+
+    ConversionCache(String name)
+    {
+        this.name = name;
+        TypeMemo.register(this);
+    }
+
+    static class ValueRef<V> extends SoftReference<V>
+    {
+        final Object key; // map key
+
+        ValueRef(Object key, V value, ReferenceQueue<Object> queue)
+        {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+
+    // a reference in `queue`; once it's cleared, the entry of mapKey() is dead.
+    // the map key must then be equal only to itself.
+    interface KeyRef
+    {
+        Object mapKey();
+    }
+
+    // null if absent
+    V get(K key)
+    {
+        expunge();
+
+        ValueRef<V> ref = map.get(key);
+        V value = (ref==null)? null : ref.get();
+        if(value==null)
+            misses.increment();
+        else if(TypeMemo.countHits)
+            hits.increment();
+        return value;
+    }
+
+    void put(K key, V value)
+    {
+        expunge();
+
+        map.put(key, new ValueRef<V>(key, value, queue));
+    }
+
+    // remove entries whose key or value is cleared. cheap if there's none.
+    void expunge()
+    {
+        for(Reference<?> ref; (ref=queue.poll())!=null; )
+        {
+            if(ref instanceof ValueRef)
+                map.remove(((ValueRef<?>)ref).key, ref); // only if it's still the value
+            else
+                map.remove(((KeyRef)ref).mapKey()); // equal only to itself now
+        }
+    }
+
+    public String toString()
+    {
+        return TypeMemo.toString(name, hits, misses, map.size());
+    }
+}
@@ -0,0 +1,256 @@
+package bayou.jtype;
+
+import java.util.*;
+
+/**
+ * Diamond inference for a fixed pair of (target class, generic class), prepared in advance.
+ * <p>
+ *     A template is created once, for example when a binding is made;
+ *     then {@link #infer(ClassType) infer(targetType)} is equivalent to
+ *     {@link TypeMath#diamondInfer(ClassType, Class) TypeMath.diamondInfer(targetType, genericClass)}
+ *     for any target type of the target class.
+ * </p>
+ * <p>
+ *     The generic class and its supertype of the target class are resolved in advance.
+ *     In the common case where each type variable of the generic class appears in that supertype
+ *     as a type argument, for example
+ * </p>
+ * <pre>
+ *     class MyList&lt;E&gt; implements List&lt;E&gt;
+ *
+ *     template = DiamondTemplate.of(List.class, MyList.class);
+ *     template.infer( <i>List&lt;String&gt;</i> )  =&gt; <i>MyList&lt;String&gt;</i>
+ * </pre>
+ * <p>
+ *     the type variables are solved by matching the target type against the supertype,
+ *     in time proportional to the size of the target type; no constraints are built.
+ *     Otherwise, the full inference of <code>diamondInfer()</code> is done.
+ * </p>
+ * <p>
+ *     If failures are expected, e.g. when the template is tried against arbitrary types,
+ *     use {@link #tryInfer(ClassType) tryInfer(targetType)}, which returns null on failure.
+ *     It also rejects obviously mismatching target types by cheap structural checks,
+ *     before any inference is done.
+ * </p>
+ */
+final public class DiamondTemplate
+{
+    final Class<?> targetClass;
+    final Class<?> genericClass;
+    final List<TypeVar<?>> vars; // V1..Vm of G
+    final ClassType<?> superType; // A<s1..sn>, supertype of G<V1..Vm>. null if G is not a subclass of A
+
+    DiamondTemplate(Class<?> targetClass, Class<?> genericClass)
+    {
+        this.targetClass = targetClass;
+        this.genericClass = genericClass;
+
+        ClassType<?> X0 = ClassType.withTypeVars(genericClass);
+        this.vars = X0.getTypeVars();
+        this.superType = targetClass.isAssignableFrom(genericClass)? TypeMath.getSuperType(X0, targetClass) : null;
+    }
+
+    /**
+     * Create a template for diamond inference of `genericClass` against types of `targetClass`.
+     */
+    static public DiamondTemplate of(Class<?> targetClass, Class<?> genericClass)
+    {
+        if(targetClass==null)
+            throw new IllegalArgumentException("targetClass==null");
+        if(genericClass==null)
+            throw new IllegalArgumentException("genericClass==null");
+        return new DiamondTemplate(targetClass, genericClass);
+    }
+
+    public String toString()
+    {
+        return String.format("DiamondTemplate(targetClass=%s, genericClass=%s)",
+            targetClass.getName(), genericClass.getName());
+    }
+
+    /**
+     * Do diamond inference against the target type.
+     * <p>
+     *     This method is equivalent to
+     *     {@link TypeMath#diamondInfer(ClassType, Class) TypeMath.diamondInfer(targetType, genericClass)}.
+     * </p>
+     * @throws java.lang.RuntimeException if inference fails
+     */
+    public ClassType<?> infer(ClassType<?> targetType) throws RuntimeException
+    {
+        ClassType<?> result = match(targetType);
+        if(result!=null)
+            return result;
+        return TypeInference.diamondInfer(targetType, genericClass); // throws
+    }
+
+    /**
+     * Do diamond inference against the target type; return null if inference fails.
+     * <p>
+     *     This method is equivalent to {@link #infer(ClassType) infer(targetType)},
+     *     except that failure is reported by null, instead of by exception.
+     * </p>
+     */
+    public ClassType<?> tryInfer(ClassType<?> targetType)
+    {
+        if(!mayMatch(targetType))
+            return null;
+        ClassType<?> result = match(targetType);
+        if(result!=null)
+            return result;
+        return TypeInference.tryDiamondInfer(targetType, genericClass);
+    }
+
+    // pre-check. false if there's definitely no solution. e.g. for
+    //     class G<V extends Number> implements A<V, String>
+    // targets A<String, String>, A<Integer, Integer> and A<Integer, ? super Integer> are rejected.
+    boolean mayMatch(ClassType<?> targetType)
+    {
+        if(superType==null)
+            return false;
+        if(targetType.getTheClass()!=targetClass)
+            return targetType.getTheClass().isAssignableFrom(genericClass);
+        return mayContain(superType, targetType, false);
+    }
+
+    // s <: y (or s = y, if `eq`); false if definitely not. s may contain V1..Vm
+    boolean mayContain(ReferenceType<?> s, ReferenceType<?> y, boolean eq)
+    {
+        boolean groundY = TypeMath.isGround(y);
+        if(groundY && TypeMath.isGround(s))
+            return eq? TypeMath.isEquivalent(s, y) : TypeMath.isSubType(s, y);
+
+        if(s instanceof TypeVar && vars.contains(s))
+        {
+            // y, or a subtype of it (if !eq), must be within var's bound
+            ReferenceType<?> bound = ((TypeVar<?>)s).getUpperBound();
+            if(eq && groundY && TypeMath.isGround(bound))
+                return TypeMath.isSubType(y, bound);
+            return true;
+        }
+
+        if(!(s instanceof ClassType) || !(y instanceof ClassType))
+            return true;
+        ClassType<?> cs = (ClassType<?>)s;
+        ClassType<?> cy = (ClassType<?>)y;
+        Class<?> classS = cs.clazz, classY = cy.clazz; // ClassType.clazz is a raw Class
+        if(eq? classS!=classY : !classY.isAssignableFrom(classS))
+            return false;
+        int n = cy.args.size();
+        if(cs.clazz!=cy.clazz || n==0 || cs.args.size()!=n) // raw, or needs supertype of s
+            return true;
+
+        for(int i=0; i<n; i++) // yi contains si
+        {
+            TypeArg si = cs.args.get(i);
+            TypeArg yi = cy.args.get(i);
+            if(!(si instanceof ReferenceType))
+                continue;
+            ReferenceType<?> rs = (ReferenceType<?>)si;
+            if(yi instanceof ReferenceType)
+            {
+                if(!mayContain(rs, (ReferenceType<?>)yi, true))
+                    return false;
+            }
+            else if(!eq) // yi is wildcard. (if eq, yi must be equivalent to si; we don't check)
+            {
+                Wildcard wild = (Wildcard)yi;
+                if(!mayContain(rs, wild.upperBound, false))
+                    return false;
+                if(!(wild.lowerBound instanceof NullType) && TypeMath.isGround(rs) && TypeMath.isGround(wild.lowerBound)
+                    && !TypeMath.isSubType(wild.lowerBound, rs))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    // return null if the fast path doesn't apply, or no solution; caller falls back to full inference.
+    ClassType<?> match(ClassType<?> targetType)
+    {
+        if(superType==null || targetType.getTheClass()!=targetClass || !TypeMath.isGround(targetType))
+            return null;
+
+        HashMap<TypeVar, ReferenceType<?>> solutions = new HashMap<TypeVar, ReferenceType<?>>();
+        if(!matchSub(superType, targetType, solutions))
+            return null;
+
+        int m = vars.size();
+        TypeArg[] args = new TypeArg[m];
+        for(int j=0; j<m; j++)
+        {
+            TypeVar<?> var = vars.get(j);
+            ReferenceType<?> vj = solutions.get(var);
+            if(vj==null) // not determined by target type; solved by bounds
+                return null;
+            // vj must be within bounds. if not, there's no solution; let full inference report it.
+            if(!TypeMath.isSubType(vj, TypeMath.doSubstitutions(var.getUpperBound(), solutions)))
+                return null;
+            if(!TypeMath.isSubType(TypeMath.doSubstitutions(var.getLowerBound(), solutions), vj))
+                return null;
+            args[j] = vj;
+        }
+        return new ClassType.Impl<Object>(false, genericClass, args);
+    }
+
+    // s <: y, where s may contain V1..Vm, y is ground.
+    boolean matchSub(ClassType<?> s, ClassType<?> y, HashMap<TypeVar, ReferenceType<?>> solutions)
+    {
+        if(s.clazz!=y.clazz)
+            return false;
+        int n = y.args.size();
+        if(n==0 || s.args.size()!=n) // raw
+            return false;
+        for(int i=0; i<n; i++)
+        {
+            TypeArg si = s.args.get(i);
+            TypeArg yi = y.args.get(i);
+            if(yi instanceof ReferenceType) // yi contains si => si = yi
+            {
+                if(!(si instanceof ReferenceType) || !matchEq((ReferenceType<?>)si, (ReferenceType<?>)yi, solutions))
+                    return false;
+            }
+            else // yi = ? extends U, contains si => si <: U
+            {
+                Wildcard wild = (Wildcard)yi;
+                if(!(wild.lowerBound instanceof NullType))
+                    return false;
+                if(!(si instanceof ClassType) || !(wild.upperBound instanceof ClassType))
+                    return false;
+                if(!matchSub((ClassType<?>)si, (ClassType<?>)wild.upperBound, solutions))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    // s = y, where s may contain V1..Vm, y is ground.
+    boolean matchEq(ReferenceType<?> s, ReferenceType<?> y, HashMap<TypeVar, ReferenceType<?>> solutions)
+    {
+        if(s instanceof TypeVar && vars.contains(s))
+        {
+            ReferenceType<?> prev = solutions.put((TypeVar)s, y);
+            return prev==null || prev.equals(y);
+        }
+        if(TypeMath.isGround(s))
+            return s.equals(y); // if not equal, they may still be equivalent; leave it to full inference.
+
+        if(!(s instanceof ClassType) || !(y instanceof ClassType))
+            return false;
+        ClassType<?> cs = (ClassType<?>)s;
+        ClassType<?> cy = (ClassType<?>)y;
+        int n = cy.args.size();
+        if(cs.clazz!=cy.clazz || cs.args.size()!=n)
+            return false;
+        for(int i=0; i<n; i++)
+        {
+            TypeArg si = cs.args.get(i);
+            TypeArg yi = cy.args.get(i);
+            if(!(si instanceof ReferenceType) || !(yi instanceof ReferenceType))
+                return false;
+            if(!matchEq((ReferenceType<?>)si, (ReferenceType<?>)yi, solutions))
+                return false;
+        }
+        return true;
+    }
+}
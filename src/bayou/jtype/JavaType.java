@@ -1,5 +1,9 @@
 package bayou.jtype;
 
+import _bayou._tmp._Array2ReadOnlyList;
+
+import java.util.List;
+
 /**
  * Any Java type.
  * <p>
@@ -72,6 +76,8 @@ public abstract class JavaType<T>
         return h;
     }
 
+    Class<?> memoHome; // see TypeMemo.home(). computed on demand
+
     /**
      * Whether this type is equal to another type.
      * <p>
@@ -123,6 +129,23 @@ public abstract class JavaType<T>
         return TypeMath.convertType(jlrType);
     }
 
+    /**
+     * Convert {@link java.lang.reflect.Type java.lang.reflect.Type}s to
+     * {@link bayou.jtype.JavaType bayou.jtype.JavaType}s.
+     * <p>
+     *     This method is equivalent to calling {@link #convertFrom(java.lang.reflect.Type)} on each element.
+     *     Conversions are cached; converting the same types repeatedly, e.g. generic types of fields and methods,
+     *     usually returns the same `JavaType` instances.
+     * </p>
+     */
+    static public List<JavaType<?>> convertAll(java.lang.reflect.Type... jlrTypes)
+    {
+        JavaType<?>[] types = new JavaType<?>[jlrTypes.length];
+        for(int i=0; i<jlrTypes.length; i++)
+            types[i] = TypeMath.convertType(jlrTypes[i]);
+        return new _Array2ReadOnlyList<JavaType<?>>(types);
+    }
+
 
 
 }
@@ -11,7 +11,7 @@ class TypeInference
     // reduce them, Ci becomes (Ci1 and Ci2 and ...), eventually all are reduced to var constraints.
     // if Cj becomes (Cj1 or Cj2 or ...), abandon this inference, create orBranches=(K1 or K2 or ...)
     // where Kx = (C1 and .. Cjx .. ). solve K1,K2..., pick the first one with a solution.
-    LinkedList<Constraint> constraints = new LinkedList<Constraint>();
+    ArrayDeque<Constraint> constraints = new ArrayDeque<Constraint>();
     ArrayList<TypeInference> orBranches = null;
     String branchName;
 
@@ -22,10 +22,39 @@ class TypeInference
     boolean oneSolutionIsFound = false, mayHaveOtherSolutions = false;
 
     List<ReferenceType<?>> solutions;
+
+    // reason of failure. formatted only on demand, see errorMsg(); a failure is often expected, e.g. in a branch.
+    Constraint unsatisfied;
+    ArrayList<TypeVar<?>> unsolved;
     String errorMsg=null;
 
+    // solve() caught an unexpected throwable, e.g. StackOverflowError, or "taking too long", in this or a branch.
+    // the result may not be a function of the constraints; it must not be memoized.
+    boolean aborted;
+
+    String errorMsg()
+    {
+        return errorMsg(unsatisfied, unsolved, errorMsg);
+    }
+    static String errorMsg(Constraint unsatisfied, ArrayList<TypeVar<?>> unsolved, String errorMsg)
+    {
+        if(unsatisfied!=null)
+            return "unsatisfiable: "+unsatisfied.toString(true);
+        if(unsolved!=null)
+        {
+            ArrayList<String> names = new ArrayList<String>();
+            for(TypeVar<?> var : unsolved)
+                names.add(var.ss());
+            return "unsolved vars: "+names.toString();
+        }
+        return errorMsg;
+    }
+
     Counter counter; // we may have dead loops; abort if taking too long.
 
+    // solutions of 2/3-solved vars, for substitution. updated as vars are solved.
+    HashMap<TypeVar, ReferenceType<?>> substitutions = new HashMap<TypeVar, ReferenceType<?>>();
+
     TypeInference(List<TypeVar<?>>vars, boolean addBoundsAsConstraints)
     {
         counter = new Counter();
@@ -87,7 +116,8 @@ class TypeInference
         branch.varConstraints = new VarConstraint[N];
         for(int i=0; i<N; i++)
             branch.varConstraints[i] = varConstraints[i].klone();
-        branch.constraints.addAll(constraints);
+        branch.constraints = new ArrayDeque<Constraint>(constraints);
+        branch.substitutions = new HashMap<TypeVar, ReferenceType<?>>(substitutions);
 
         branch.addConstraint(parent, lhs, rhs, op);
     }
@@ -135,6 +165,22 @@ class TypeInference
         ArrayList<Constraint> equals = new ArrayList<Constraint>();
         ArrayList<Constraint> lowers = new ArrayList<Constraint>();
 
+        // lists are shared with other branches; copy them before modification.
+        boolean shared;
+        void own()
+        {
+            if(!shared)
+                return;
+            shared = false;
+            uppers = copy(uppers);
+            equals = copy(equals);
+            lowers = copy(lowers);
+        }
+        static ArrayList<Constraint> copy(ArrayList<Constraint> list)
+        {
+            return (list==null)? null : new ArrayList<Constraint>(list);
+        }
+
         // (v op x), x cannot be intersection type
         void add(Constraint c) throws ConstraintException
         {
@@ -151,6 +197,7 @@ class TypeInference
             }
             // our algo won't lead to a var=Null solution
 
+            own();
             if     (c.op<0)
                 uppers.add(c);
             else if(c.op==0)
@@ -168,12 +215,14 @@ class TypeInference
         ReferenceType<?> solution = null;
         boolean done = false;
 
+        // copy-on-write. after branching, `this` is abandoned; but there can be multiple branches.
         VarConstraint klone()
         {
             VarConstraint klone = new VarConstraint(this.var);
-            klone.uppers.addAll(this.uppers);
-            klone.equals.addAll(this.equals);
-            klone.lowers.addAll(this.lowers);
+            klone.uppers = this.uppers; // null if done
+            klone.equals = this.equals;
+            klone.lowers = this.lowers;
+            klone.shared = this.shared = true;
             klone.solution = this.solution;
             klone.done = this.done;
             return klone;
@@ -187,6 +236,11 @@ class TypeInference
         {
             this.constraint = constraint;
         }
+        // it's a normal outcome of reduction, not a bug; stack trace is not needed.
+        public Throwable fillInStackTrace()
+        {
+            return this;
+        }
     }
     static class Counter
     {
@@ -207,14 +261,14 @@ class TypeInference
         }
         catch(ConstraintException e)
         {
-            errorMsg = "unsatisfiable: "+e.constraint.toString(true);
+            unsatisfied = e.constraint;
             if(testTrace)
-                System.out.println(branchName+" ERR: "+errorMsg);
+                System.out.println(branchName+" ERR: "+errorMsg());
             return;
         }
-        catch(Throwable t)
+        catch(Throwable t) // e.g. taking too long. reported as error message.
         {
-            t.printStackTrace(); //todo log
+            aborted = true;
             mayHaveOtherSolutions = true;
             errorMsg = t.toString();
             return;
@@ -226,19 +280,20 @@ class TypeInference
             return;
         }
 
-        ArrayList<String> unsolved = new ArrayList<String>();
         solutions = new ArrayList<ReferenceType<?>>(varConstraints.length);
         for (VarConstraint vc : varConstraints)
         {
             solutions.add(vc.solution);
             if (vc.solution == null)
-                unsolved.add(vc.var.ss());
+            {
+                if(unsolved==null)
+                    unsolved = new ArrayList<TypeVar<?>>();
+                unsolved.add(vc.var);
+            }
         }
 
-        if(unsolved.size()==0)
+        if(unsolved==null)
             oneSolutionIsFound = true;
-        else
-            errorMsg = "unsolved vars: "+unsolved.toString();
 
         // the mayHaveOtherSolutions flag could have been set in doBoundedChoices()
     }
@@ -262,6 +317,8 @@ class TypeInference
             }
             if(branch.mayHaveOtherSolutions)
                 this.mayHaveOtherSolutions = true;
+            if(branch.aborted)
+                this.aborted = true;
 
             if(testTrace)
                 continue; // go thru all branches
@@ -341,6 +398,8 @@ class TypeInference
                     if(!containsVar(typeU)) // 1-solved
                     {
                         vc.solution = typeU; // 2-solved
+                        substitutions.put(vc.var, typeU);
+                        vc.own();
                         vc.equals.remove(i); // remove from an array list. ok. list is likely to be small.
                         if(testTrace)
                             System.out.printf("%s solved %s == %s %n", branchName, vc.var.ss(), typeU.ss());
@@ -359,13 +418,7 @@ class TypeInference
     // substitute all 2/3-solved variables
     void doSubstitutions()
     {
-        HashMap<TypeVar, ReferenceType<?>> substitutions = new HashMap<TypeVar, ReferenceType<?>>();
-        for(VarConstraint varConstraint : varConstraints)
-        {
-            if(varConstraint.solution!=null) // 2/3-solved
-                substitutions.put(varConstraint.var, varConstraint.solution);
-        }
-
+        // `substitutions` contains all 2/3-solved vars
         for(VarConstraint vc : varConstraints)
         {
             if(vc.done) // 3-solved. no more constraints about this var.
@@ -373,9 +426,9 @@ class TypeInference
 
             // for any (Ti op V), if V contains solved variables,
             // do substitution, V->V'. the constraint becomes (Ti op V')
-            doSubstitutions(vc.uppers, substitutions);
-            doSubstitutions(vc.equals, substitutions);
-            doSubstitutions(vc.lowers, substitutions);
+            doSubstitutions(vc, vc.uppers, substitutions);
+            doSubstitutions(vc, vc.equals, substitutions);
+            doSubstitutions(vc, vc.lowers, substitutions);
             // if op is = and V' is variable-less, this may lead to new solutions.
             // so after this method call, checkSolved() should be called again
 
@@ -399,13 +452,22 @@ class TypeInference
         }
     }
 
-    static void doSubstitutions(ArrayList<Constraint> vcs, Map<TypeVar, ReferenceType<?>> substitutions)
+    // in place; a constraint is replaced only if it's changed. vc.own() before the 1st change.
+    static void doSubstitutions(VarConstraint vc, ArrayList<Constraint> vcs, Map<TypeVar, ReferenceType<?>> substitutions)
     {
         for(int i=0; i<vcs.size(); i++)
         {
             Constraint ci = vcs.get(i);
             ReferenceType<?> lhs = TypeMath.doSubstitutions( ci.lhs, substitutions );
             ReferenceType<?> rhs = TypeMath.doSubstitutions( ci.rhs, substitutions );
+            if(lhs==ci.lhs && rhs==ci.rhs)
+                continue;
+            if(vc.shared)
+            {
+                int k = (vcs==vc.uppers)? 0 : (vcs==vc.equals)? 1 : 2;
+                vc.own();
+                vcs = (k==0)? vc.uppers : (k==1)? vc.equals : vc.lowers;
+            }
             vcs.set(i, new Constraint(ci.parent, lhs, rhs, ci.op));
         }
     }
@@ -514,8 +576,10 @@ class TypeInference
         // now we have a choice within bounds.
         // 2-solved. goto checkSolved()
         vc.solution = chosen;
+        substitutions.put(vc.var, chosen);
 
         // uppers lowers are satisfied
+        vc.own();
         vc.uppers.clear();
         vc.lowers.clear();
         // equals are yet to be checked
@@ -754,16 +818,86 @@ class TypeInference
     }
 
     // solve Y = new G<>(), return X=G<t1..tn>, X<:Y
-    // throw Error if inference fails
+    // throw RuntimeException if inference fails
     public static ClassType<?> diamondInfer(ClassType<?> targetType, Class<?> genericClass) throws RuntimeException
+    {
+        Object result = diamondResult(targetType, genericClass);
+        if(result instanceof DiamondFailure)
+            throw new RuntimeException("inference failed: "+result);
+        return (ClassType<?>)result;
+    }
+
+    // return null if inference fails. no exception is created.
+    public static ClassType<?> tryDiamondInfer(ClassType<?> targetType, Class<?> genericClass)
+    {
+        Object result = diamondResult(targetType, genericClass);
+        if(result instanceof DiamondFailure)
+            return null;
+        return (ClassType<?>)result;
+    }
+
+    // return ClassType, or DiamondFailure
+    static Object diamondResult(ClassType<?> targetType, Class<?> genericClass)
+    {
+        // cheap check. G<..> <: Y requires G.class <: Y.class
+        if(!targetType.getTheClass().isAssignableFrom(genericClass))
+            return new DiamondFailure(null, null, String.format("%s is not subclass of %s", genericClass.getName(),
+                targetType.getTheClass().getName()));
+
+        if(!TypeMath.isGround(targetType))
+            return diamondResult(diamondInfer0(targetType, genericClass), genericClass);
+
+        // the result is a function of (targetType, genericClass); unsatisfiable constraints are memoized too.
+        // but not if the inference is aborted, e.g. by StackOverflowError; it may succeed next time.
+        TypeMemo.Pair key = new TypeMemo.Pair(0, targetType, genericClass);
+        Object result = diamondMemo.get(key);
+        if(result==null)
+        {
+            TypeInference infer = diamondInfer0(targetType, genericClass);
+            result = diamondResult(infer, genericClass);
+            if(!infer.aborted)
+                diamondMemo.put(key, result);
+        }
+        return result;
+    }
+
+    // value is ClassType, or DiamondFailure
+    static final TypeMemo<TypeMemo.Pair, Object> diamondMemo = new TypeMemo<TypeMemo.Pair, Object>("TypeMath.diamondInfer", 4096);
+
+    // the error message is formatted only when needed
+    static class DiamondFailure
+    {
+        final Constraint unsatisfied;
+        final ArrayList<TypeVar<?>> unsolved;
+        final String errorMsg;
+        DiamondFailure(Constraint unsatisfied, ArrayList<TypeVar<?>> unsolved, String errorMsg)
+        {
+            this.unsatisfied = unsatisfied;
+            this.unsolved = unsolved;
+            this.errorMsg = errorMsg;
+        }
+        public String toString()
+        {
+            return errorMsg(unsatisfied, unsolved, errorMsg);
+        }
+    }
+
+    // return the solved inference
+    static TypeInference diamondInfer0(ClassType<?> targetType, Class<?> genericClass)
     {
         // X0 = G<T1..Tn>
         ClassType<?> X0 = ClassType.withTypeVars(genericClass);
         TypeInference infer = new TypeInference(X0.getTypeVars(), true);
         infer.addConstraint(null, X0, targetType, -1);
         infer.solve();
+        return infer;
+    }
+
+    // return ClassType, or DiamondFailure
+    static Object diamondResult(TypeInference infer, Class<?> genericClass)
+    {
         if(!infer.oneSolutionIsFound)
-            throw new RuntimeException("inference failed: "+infer.errorMsg);
+            return new DiamondFailure(infer.unsatisfied, infer.unsolved, infer.errorMsg);
         List<TypeArg> args = TypeMath.cast(infer.solutions);
         return new ClassType.Impl<Object>(false, genericClass, args);
     }
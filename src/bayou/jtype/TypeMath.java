@@ -1,6 +1,7 @@
 package bayou.jtype;
 
 import _bayou._tmp._Array2ReadOnlyList;
+import _bayou._tmp._ClassMemo;
 
 import java.io.Serializable;
 import java.lang.reflect.*;
@@ -17,10 +18,46 @@ public class TypeMath
 {
     private TypeMath(){}
 
+    /**
+     * Statistics of internal memos, for diagnosis.
+     * <p>
+     *     Results of some algorithms, e.g. {@link #isSubType(ReferenceType, ReferenceType) isSubType},
+     *     are memoized; this method returns hit/miss counts of the memos, one line per memo.
+     * </p>
+     * <p>
+     *     Hits are counted only if system property <code>bayou.jtype.memoStats</code> is <code>true</code>;
+     *     counting them costs a little on every memo lookup.
+     * </p>
+     * <p>
+     *     Memos don't keep classes from being unloaded. Entries on types of classes from other class loaders
+     *     are kept along with those classes; the sizes reported here don't include them.
+     * </p>
+     */
+    static public String getMemoStats()
+    {
+        return TypeMemo.stats();
+    }
+
     // ============================================================================================== convert jlr Type
 
     // wildcard is not really a java type; don't pass a java.lang.reflect.WildcardType to this method.
+    // the result is memoized; the same jlr type usually converts to the same JavaType instance.
+    // jlr types are compared by equals(); types from different copies of a Method share an entry.
+    // the entry lives as long as the classes of the jlr type, not the jlr type instance; see TypeMemo.home()
     static <T> JavaType<T> convertType(Type jlrType)
+    {
+        JavaType<?> type = conversionMemo.get(jlrType);
+        if(type==null)
+        {
+            type = convertType0(jlrType);
+            conversionMemo.put(jlrType, type);
+        }
+        return cast(type);
+    }
+    static final TypeMemo<Type, JavaType<?>> conversionMemo
+        = new TypeMemo<Type, JavaType<?>>("TypeMath.convertType", 4096);
+
+    static <T> JavaType<T> convertType0(Type jlrType)
     {
         if(jlrType instanceof Class) // cast it to Class<T>
             return convertType( TypeMath.< Class<T> >cast(jlrType) );
@@ -284,6 +321,49 @@ public class TypeMath
      * Test whether `typeA` is a subtype of `typeB`.
      */
     static public boolean isSubType(ReferenceType<?> typeA, ReferenceType<?> typeB)
+    {
+        // memoize nontrivial cases on ground types. e.g. ArrayList<String> <: List<? extends CharSequence>
+        boolean memo = (typeB instanceof ClassType && ((ClassType<?>)typeB).args.size()>0 || typeB instanceof ArrayType)
+            && (typeA instanceof ClassType || typeA instanceof ArrayType)
+            && isGround(typeA) && isGround(typeB);
+        if(!memo)
+            return isSubType0(typeA, typeB);
+
+        TypeMemo.Pair key = new TypeMemo.Pair(OP_SUBTYPE, typeA, typeB);
+        Boolean result = boolMemo.get(key);
+        if(result==null)
+            boolMemo.put(key, result = isSubType0(typeA, typeB));
+        return result;
+    }
+
+    // memo of boolean relations on ground types
+    static final TypeMemo<TypeMemo.Pair, Boolean> boolMemo = new TypeMemo<TypeMemo.Pair, Boolean>("TypeMath.isSubType/contains/isEquivalent", 4096);
+    static final int OP_SUBTYPE=1, OP_CONTAINS=2, OP_EQUIVALENT=3;
+
+    // whether the type contains no type variables (including captured ones) or intersection types.
+    // relations between ground types are pure functions of them, and can be memoized.
+    static boolean isGround(TypeArg arg)
+    {
+        if(arg instanceof ClassType)
+        {
+            for(TypeArg a : ((ClassType<?>)arg).args)
+                if(!isGround(a))
+                    return false;
+            return true;
+        }
+        if(arg instanceof ArrayType)
+        {
+            JavaType<?> compoType = ((ArrayType<?>)arg).componentType;
+            return !(compoType instanceof ReferenceType) || isGround((ReferenceType<?>)compoType);
+        }
+        if(arg instanceof Wildcard)
+            return isGround(((Wildcard)arg).upperBound) && isGround(((Wildcard)arg).lowerBound);
+        if(arg instanceof NullType)
+            return true;
+        return false; // TypeVar, IntersectionType
+    }
+
+    static boolean isSubType0(ReferenceType<?> typeA, ReferenceType<?> typeB)
     {
         /* rules. left choices = A, top choices = B
 
@@ -385,6 +465,14 @@ public class TypeMath
         // note: that's harsh. e.g. class A<T> extends B<Int>, A(raw) is not subtype of B<Int>
 
         // neither raw.
+        // common shapes of wildcards in A can be decided without capture conversion
+        if(typeA.hasWildcard())
+        {
+            Boolean result = isSubTypeNoCapture(typeA, typeB);
+            if(result!=null)
+                return result;
+        }
+
         // capture conversion is required, even if A and B are of the same class.
         ClassType<?> typeA2 = doCaptureConversion(typeA);
         ClassType<?> typeA3 = getSuperType(typeA2, typeB.clazz);  // no wildcard arg
@@ -396,6 +484,58 @@ public class TypeMath
         return true;
     }
 
+    // A<a1..an> <: B<b1..bm>, without creating captured vars. return null if undecided; caller does the full check.
+    // class A<T1..Tn> extends B<s1..sm>. each sj must be either some Ti, or a ground type.
+    // if sj=Ti, ai is a wildcard, its capture Zi has
+    //     lower bound: ai.lower
+    //     upper bound: ai.upper & Ui, where Ui is the declared bound of Ti; it must be ground, free of T1..Tn.
+    // bj contains Zi, i.e. bj.lower <: Zi <: bj.upper,
+    //     iff bj.lower <: ai.lower, and (ai.upper <: bj.upper or Ui <: bj.upper)
+    // bounds of bj must be ground too, otherwise subtyping with Zi may go through other rules.
+    static Boolean isSubTypeNoCapture(ClassType<?> typeA, ClassType<?> typeB)
+    {
+        ClassType<?> declSuper = getDeclaredSuperType(typeA.clazz, typeB.clazz); // B<s1..sm>
+        if(declSuper.args.size()==0) // A extends raw B
+            return Boolean.FALSE;
+
+        List<TypeVar<?>> vars = typeA.getTypeVars(); // T1..Tn
+        for(int j=0; j<declSuper.args.size(); j++)
+        {
+            TypeArg sj = declSuper.args.get(j);
+            TypeArg bj = typeB.args.get(j);
+            if(!(sj instanceof TypeVar))
+            {
+                if(!isGround(sj))
+                    return null;
+                if(!contains(bj, (ReferenceType<?>)sj))
+                    return Boolean.FALSE;
+                continue;
+            }
+            int i = vars.indexOf(sj);
+            if(i<0) // not possible
+                return null;
+            TypeArg ai = typeA.args.get(i);
+            if(!(ai instanceof Wildcard)) // Zi=ai
+            {
+                if(!contains(bj, (ReferenceType<?>)ai))
+                    return Boolean.FALSE;
+                continue;
+            }
+            if(!(bj instanceof Wildcard)) // e.g. List<? super Object> <: List<Object>; rare
+                return null;
+            Wildcard wa = (Wildcard)ai;
+            Wildcard wb = (Wildcard)bj;
+            ReferenceType<?> Ui = vars.get(i).getUpperBound();
+            if(!isGround(Ui) || !isGround(wb.upperBound) || !isGround(wb.lowerBound))
+                return null;
+            if(!isSubType(wb.lowerBound, wa.lowerBound))
+                return Boolean.FALSE;
+            if(!isSubType(wa.upperBound, wb.upperBound) && !isSubType(Ui, wb.upperBound))
+                return Boolean.FALSE;
+        }
+        return Boolean.TRUE;
+    }
+
     /**
      * Get the supertype of `type` at the specified `superClass`.
      * <p>
@@ -416,6 +556,48 @@ public class TypeMath
     {
         assert superClass.isAssignableFrom(type.clazz);
 
+        Class clazz = type.clazz;
+        if(clazz==superClass)
+            return type;
+
+        if(type.isRawType())
+            return new ClassType.Impl(false, superClass); // super types of raw are raw
+
+        // type = A<a1..an>
+        // declared super type B< s1(T1..Tn) .. sm(T1..Tn) >, computed once per (A, B)
+        ClassType<?> declSuper = getDeclaredSuperType(clazz, superClass);
+        if(declSuper.args.size()==0) // raw, or B is not generic
+            return declSuper;
+
+        // B< s1(a1..an) .. sm(a1..an) >
+        Map<TypeVar, ReferenceType<?>> args = cast(getTypeArgs(type)); // safe cast, `type` has no wildcard arg.
+        return doSubstitutions(declSuper, args);
+    }
+
+    // A => { B => B< s1(T1..Tn) .. sm(T1..Tn) > }, i.e. getSuperType(A<T1..Tn>, B)
+    static final _ClassMemo<ConcurrentHashMap<Class, ClassType<?>>> declaredSuperTypes
+        = new _ClassMemo<ConcurrentHashMap<Class, ClassType<?>>>()
+    {
+        protected ConcurrentHashMap<Class, ClassType<?>> compute(Class<?> clazz)
+        {
+            return new ConcurrentHashMap<Class, ClassType<?>>();
+        }
+    };
+    static ClassType<?> getDeclaredSuperType(Class<?> clazz, Class<?> superClass)
+    {
+        ConcurrentHashMap<Class, ClassType<?>> map = declaredSuperTypes.get(clazz);
+        ClassType<?> declSuper = map.get(superClass);
+        if(declSuper==null)
+        {
+            declSuper = walkSuperType(ClassType.withTypeVars(clazz), superClass);
+            map.put(superClass, declSuper);
+        }
+        return declSuper;
+    }
+
+    // walk up the hierarchy, one direct parent at a time
+    static ClassType<?> walkSuperType(ClassType<?> type, Class<?> superClass)
+    {
         Class clazz = type.clazz;
         if(clazz==superClass)
             return type;
@@ -440,7 +622,7 @@ public class TypeMath
         ClassType<?> directParent2 = doSubstitutions(directParent, args);
 
         // recursive, until superClass is reached
-        return getSuperType(directParent2, superClass);
+        return walkSuperType(directParent2, superClass);
     }
     // direct parent that is also subtype of superClass
     // both args are class/interface, and thisClass is assignable to superClass
@@ -479,6 +661,17 @@ public class TypeMath
     // spec (4.5.1.1) has clauses for arg2 being wildcard;
     // however in actual usage (4.10.2), arg2 is always a reference type, never a wildcard.
     static boolean contains(TypeArg arg1, ReferenceType<?> arg2) // JLS3#4.5.1.1
+    {
+        if(!isGround(arg1) || !isGround(arg2))
+            return contains0(arg1, arg2);
+
+        TypeMemo.Pair key = new TypeMemo.Pair(OP_CONTAINS, arg1, arg2);
+        Boolean result = boolMemo.get(key);
+        if(result==null)
+            boolMemo.put(key, result = contains0(arg1, arg2));
+        return result;
+    }
+    static boolean contains0(TypeArg arg1, ReferenceType<?> arg2)
     {
         if(arg1 instanceof ReferenceType)
             return isEquivalent((ReferenceType<?>)arg1, arg2);
@@ -492,9 +685,16 @@ public class TypeMath
     // it's possible that A,B are syntactically different
     static boolean isEquivalent(ReferenceType<?> typeA, ReferenceType<?> typeB)
     {
-        return typeA.equals(typeB) // shortcut
-            || isSubType(typeA, typeB)
-            && isSubType(typeB, typeA);
+        if(typeA.equals(typeB)) // shortcut
+            return true;
+        if(!isGround(typeA) || !isGround(typeB))
+            return isSubType(typeA, typeB) && isSubType(typeB, typeA);
+
+        TypeMemo.Pair key = new TypeMemo.Pair(OP_EQUIVALENT, typeA, typeB);
+        Boolean result = boolMemo.get(key);
+        if(result==null)
+            boolMemo.put(key, result = isSubType(typeA, typeB) && isSubType(typeB, typeA));
+        return result;
     }
 
     // =================================================================================================== well formed
@@ -563,6 +763,21 @@ public class TypeMath
         if(type0.args.size() != type0.getTypeVars().size())
             throw new AssertionError("wrong number of type arguments");
 
+        // well-formedness of a ground type is a function of it. e.g. ClassType.of(Repository.class, entityClass)
+        // is constructed repeatedly; validate once per distinct type. only successes are memoized.
+        boolean memo = isGround(type0);
+        if(memo && wellFormedMemo.get(type0)!=null)
+            return;
+        assertWellFormed0(type0);
+        if(memo)
+            wellFormedMemo.put(type0, Boolean.TRUE);
+    }
+    static final TypeMemo<ClassType<?>, Boolean> wellFormedMemo
+        = new TypeMemo<ClassType<?>, Boolean>("TypeMath.assertWellFormed", 4096);
+
+    static void assertWellFormed0(ClassType<?> type0) throws AssertionError
+    {
+
         // formally,
         // class C<P1..Pn>. for C<W1..Wn> to be well formed
         // do capture conversion on T, getting C<T1..Tn>
@@ -634,23 +849,22 @@ public class TypeMath
 
     // vars of class.
     // for inner member class, also include vars from declaring class. see ClassType doc.
-    static ConcurrentHashMap<Class, List<TypeVar<?>>> classVars = new ConcurrentHashMap<Class, List<TypeVar<?>>>();
     // returned list is immutable (for further safe publication)
-    static List<TypeVar<?>> getVars(Class clazz)
+    static final _ClassMemo<List<TypeVar<?>>> classVars = new _ClassMemo<List<TypeVar<?>>>()
     {
-        List<TypeVar<?>> vars = classVars.get(clazz);
-        if(vars==null)
+        protected List<TypeVar<?>> compute(Class<?> clazz)
         {
-            vars = _collectAllVars(clazz, new ArrayList<TypeVar<?>>());
+            List<TypeVar<?>> vars = _collectAllVars(clazz, new ArrayList<TypeVar<?>>());
             // make an immutable list
             TypeVar<?>[] arr = new TypeVar<?>[vars.size()];
             for(int i=0; i<vars.size(); i++)
                 arr[i] = vars.get(i);
-            vars = new _Array2ReadOnlyList<TypeVar<?>>(arr); // immutable
-
-            classVars.putIfAbsent(clazz, vars);
+            return new _Array2ReadOnlyList<TypeVar<?>>(arr); // immutable
         }
-        return vars;
+    };
+    static List<TypeVar<?>> getVars(Class clazz)
+    {
+        return classVars.get(clazz);
     }
     static ArrayList<TypeVar<?>> _collectAllVars(Class clazz, ArrayList<TypeVar<?>> vars)
     {
@@ -722,6 +936,14 @@ public class TypeMath
      *
      *     List&lt;? extends String&gt; list = new ArrayList&lt;&gt;();
      * </pre>
+     * <p>
+     *     Results on ground target types (i.e. without type variables) are memoized,
+     *     including failures due to unsatisfiable constraints; see {@link #getMemoStats()}.
+     * </p>
+     * <p>
+     *     If the inference is repeated for the same pair of target class and generic class,
+     *     consider {@link DiamondTemplate}.
+     * </p>
      * @throws java.lang.RuntimeException if inference fails
      */
     // solve Y = new G<>(), return X=G<t1..tn>, X<:Y
@@ -730,4 +952,17 @@ public class TypeMath
         return TypeInference.diamondInfer(targetType, genericClass);
     }
 
+    /**
+     * Do diamond inference; return null if inference fails.
+     * <p>
+     *     This method is equivalent to {@link #diamondInfer(ClassType, Class) diamondInfer(targetType, genericClass)},
+     *     except that failure is reported by null, instead of by exception.
+     *     It's cheaper if failures are expected.
+     * </p>
+     */
+    public static ClassType<?> tryDiamondInfer(ClassType<?> targetType, Class<?> genericClass)
+    {
+        return TypeInference.tryDiamondInfer(targetType, genericClass);
+    }
+
 }
@@ -0,0 +1,300 @@
+package bayou.jtype;
+
+import java.lang.reflect.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import _bayou._tmp._ClassMemo;
+import _bayou._tmp._StripedCounter;
+
+// a bounded concurrent memo of pure functions on types, with hit/miss counters for diagnosis.
+// see TypeMath.getMemoStats()
+//
+// memos are static; they must not keep classes, or their class loaders, from being unloaded.
+// entries on types of our classes (see _ClassMemo.isOurs) are kept in a global segment. entries on types
+// of other classes are kept in a segment attached to one of those classes, whose loader can see all of them;
+// see home(). if there's no such class, e.g. the types are from two unrelated loaders, it's not memoized.
+//
+// a segment is bounded. when it's full, a quarter of it is evicted, a different quarter each time;
+// the rest of the working set survives, and evicted hot entries are soon recomputed.
+//
+// a hit is on the hot path of type algorithms; it's counted only if system property
+// `bayou.jtype.memoStats` is true. a miss is followed by a computation; it's always counted.
+// counters are striped; memos are used by all threads.
+class TypeMemo<K,V>
+{
+    static final boolean countHits = Boolean.getBoolean("bayou.jtype.memoStats");
+
+    static final ArrayList<Object> all = new ArrayList<Object>(); // memos and caches. guarded by itself
+
+    static void register(Object memo)
+    {
+        synchronized (all)
+        {
+            all.add(memo);
+        }
+    }
+
+    final String name;
+    final Segment<K,V> global;
+    final _ClassMemo<Segment<K,V>> perClass;
+    final _StripedCounter hits = countHits? new _StripedCounter() : null;
+    final _StripedCounter misses = new _StripedCounter();
+
+    // maxSize of the global segment. a per-class segment is smaller; there can be many of them.
+    TypeMemo(String name, final int maxSize)
+    {
+        this.name = name;
+        this.global = new Segment<K,V>(maxSize);
+        this.perClass = new _ClassMemo<Segment<K,V>>()
+        {
+            protected Segment<K,V> compute(Class<?> clazz)
+            {
+                return new Segment<K,V>(Math.max(maxSize/16, 16));
+            }
+        };
+        register(this);
+    }
+
+    // null if the key is not memoized
+    Segment<K,V> segment(K key)
+    {
+        Class<?> home = home(key);
+        if(home==Object.class)
+            return global;
+        if(home==Mixed.class)
+            return null;
+        return perClass.get(home);
+    }
+
+    // null if absent
+    V get(K key)
+    {
+        Segment<K,V> segment = segment(key);
+        V value = (segment==null)? null : segment.map.get(key);
+        if(value==null)
+            misses.increment();
+        else if(countHits)
+            hits.increment();
+        return value;
+    }
+
+    void put(K key, V value)
+    {
+        Segment<K,V> segment = segment(key);
+        if(segment!=null)
+            segment.put(key, value);
+    }
+
+    static final class Segment<K,V>
+    {
+        final int maxSize;
+        final ConcurrentHashMap<K,V> map = new ConcurrentHashMap<K,V>();
+        final AtomicInteger size = new AtomicInteger(0); // approx. map.size() is not cheap
+        final AtomicBoolean evicting = new AtomicBoolean(false);
+        int quarter; // next quarter to evict. guarded by `evicting`
+
+        Segment(int maxSize)
+        {
+            this.maxSize = maxSize;
+        }
+
+        void put(K key, V value)
+        {
+            if(map.putIfAbsent(key, value)==null && size.incrementAndGet()>maxSize)
+                evict();
+        }
+
+        // evict quarters until it's at most 3/4 full. if another thread is evicting, don't wait for it.
+        void evict()
+        {
+            if(!evicting.compareAndSet(false, true))
+                return;
+            try
+            {
+                for(int i=0; i<4 && size.get() > maxSize/4*3; i++)
+                {
+                    int q = quarter++ & 3;
+                    for(Iterator<K> iter = map.keySet().iterator(); iter.hasNext(); )
+                    {
+                        int h = iter.next().hashCode();
+                        if(((h ^ (h>>>16)) & 3) == q)
+                        {
+                            iter.remove();
+                            size.decrementAndGet();
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                evicting.set(false);
+            }
+        }
+    }
+
+    // home of unrelated loaders
+    static final class Mixed{}
+
+    // the class whose loader can see all classes referenced by the key, a Pair or a type.
+    // Object.class if they are all ours; Mixed.class if there's no such class.
+    // keys are ground types; type vars are not expected, and are not memoized.
+    // a key can also be a java.lang.reflect.Type, including type vars; see TypeMath.convertType()
+    static Class<?> home(Object key)
+    {
+        if(key instanceof Pair)
+            return home(home(((Pair)key).a), home(((Pair)key).b));
+        if(key instanceof JavaType)
+        {
+            JavaType<?> type = (JavaType<?>)key;
+            Class<?> home = type.memoHome;
+            if(home==null) // benign race
+                type.memoHome = home = home0(type);
+            return home;
+        }
+        if(key instanceof Wildcard)
+            return home(home(((Wildcard)key).getUpperBound()), home(((Wildcard)key).getLowerBound()));
+        if(key instanceof Class)
+            return _ClassMemo.isOurs((Class<?>)key)? Object.class : (Class<?>)key;
+        if(key instanceof Type)
+            return jlrHome((Type)key);
+        return Mixed.class;
+    }
+    static Class<?> jlrHome(Type type)
+    {
+        if(type instanceof Class)
+            return home(type);
+        if(type instanceof ParameterizedType)
+        {
+            ParameterizedType pt = (ParameterizedType)type;
+            Class<?> home = jlrHome(pt.getRawType());
+            if(pt.getOwnerType()!=null)
+                home = home(home, jlrHome(pt.getOwnerType()));
+            for(Type arg : pt.getActualTypeArguments())
+                home = home(home, jlrHome(arg));
+            return home;
+        }
+        if(type instanceof GenericArrayType)
+            return jlrHome(((GenericArrayType)type).getGenericComponentType());
+        if(type instanceof WildcardType)
+        {
+            Class<?> home = Object.class;
+            for(Type bound : ((WildcardType)type).getUpperBounds())
+                home = home(home, jlrHome(bound));
+            for(Type bound : ((WildcardType)type).getLowerBounds())
+                home = home(home, jlrHome(bound));
+            return home;
+        }
+        if(type instanceof TypeVariable)
+        {
+            // its bounds are visible to the class that declares it
+            GenericDeclaration decl = ((TypeVariable<?>)type).getGenericDeclaration();
+            if(decl instanceof Class)
+                return home(decl);
+            if(decl instanceof Member)
+                return home(((Member)decl).getDeclaringClass());
+        }
+        return Mixed.class;
+    }
+    static Class<?> home0(JavaType<?> type)
+    {
+        if(type instanceof ClassType)
+        {
+            ClassType<?> ct = (ClassType<?>)type;
+            Class<?> home = home(ct.clazz);
+            for(TypeArg arg : ct.args)
+                home = home(home, home(arg));
+            return home;
+        }
+        if(type instanceof ArrayType)
+            return home(((ArrayType<?>)type).componentType);
+        if(type instanceof PrimitiveType || type instanceof NullType)
+            return Object.class;
+        if(type instanceof IntersectionType)
+        {
+            Class<?> home = Object.class;
+            for(ReferenceType<?> superType : ((IntersectionType<?>)type).superTypes)
+                home = home(home, home(superType));
+            return home;
+        }
+        return Mixed.class; // type var
+    }
+
+    // the one of two homes whose loader can see the other
+    static Class<?> home(Class<?> h1, Class<?> h2)
+    {
+        if(h1==h2 || h2==Object.class || h1==Mixed.class)
+            return h1;
+        if(h1==Object.class || h2==Mixed.class)
+            return h2;
+        ClassLoader l1 = h1.getClassLoader(), l2 = h2.getClassLoader();
+        if(isAncestor(l2, l1))
+            return h1;
+        if(isAncestor(l1, l2))
+            return h2;
+        return Mixed.class;
+    }
+    // whether `a` is `b` or an ancestor of `b`. null is the bootstrap loader.
+    static boolean isAncestor(ClassLoader a, ClassLoader b)
+    {
+        if(a==null)
+            return true;
+        for(; b!=null; b=b.getParent())
+            if(b==a)
+                return true;
+        return false;
+    }
+
+    public String toString()
+    {
+        return toString(name, hits, misses, global.size.get()); // size of the global segment
+    }
+    static String toString(String name, _StripedCounter hits, _StripedCounter misses, int size)
+    {
+        if(hits==null)
+            return String.format("%s(misses=%d, size=%d)", name, misses.get(), size);
+        return String.format("%s(hits=%d, misses=%d, size=%d)", name, hits.get(), misses.get(), size);
+    }
+
+    static String stats()
+    {
+        StringBuilder sb = new StringBuilder();
+        synchronized (all)
+        {
+            for(Object memo : all)
+                sb.append(memo).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // key of 2 types, for a binary operation
+    static final class Pair
+    {
+        final int op;
+        final Object a, b;
+        final int hashCode;
+
+        Pair(int op, Object a, Object b)
+        {
+            this.op = op;
+            this.a = a;
+            this.b = b;
+            this.hashCode = op + 31 * (a.hashCode() + 31 * b.hashCode());
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        public boolean equals(Object obj)
+        {
+            if(!(obj instanceof Pair))
+                return false;
+            Pair that = (Pair)obj;
+            return this.op==that.op && this.a.equals(that.a) && this.b.equals(that.b);
+        }
+    }
+}
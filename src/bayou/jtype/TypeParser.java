@@ -0,0 +1,315 @@
+package bayou.jtype;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+// parse a type string to ClassType, see ClassType.parse(). e.g.
+//     java.util.Map<java.lang.String, ? extends java.util.List<int[]>>
+//
+//     type     = name [ '<' typeArg {',' typeArg} '>' ] {'[' ']'}
+//     typeArg  = type | '?' [ ('extends'|'super') type ]
+//
+// name is a fully qualified class name; nested classes can be named with '.' or '$'.
+// a simple name is also resolved in java.lang, e.g. `String`. primitive names are allowed as array components.
+// the format of ClassType.toString(true) can be parsed back.
+//
+// results are cached by (string, class loader). the class loader is weakly referenced by the cache.
+class TypeParser
+{
+    static final ConversionCache<Key, ClassType<?>> cache
+        = new ConversionCache<Key, ClassType<?>>("ClassType.parse");
+
+    static ClassType<?> parse(String string, ClassLoader loader) throws IllegalArgumentException
+    {
+        Key key = new Key(string, loader);
+        ClassType<?> type = cache.get(key);
+        if(type==null)
+        {
+            type = new TypeParser(string, loader).parse(); // throws
+            cache.put(key.weak(cache.queue), type);
+        }
+        return type;
+    }
+
+    // for lookup, the key references the loader strongly. the key stored in the cache references it
+    // by a LoaderRef; once the loader is collected, the entry is expunged. see ConversionCache.KeyRef
+    static class Key
+    {
+        final String string;
+        final Object loader; // ClassLoader, or LoaderRef. null for the bootstrap loader
+        final int hashCode;
+
+        Key(String string, ClassLoader loader)
+        {
+            this.string = string;
+            this.loader = loader;
+            this.hashCode = string.hashCode() + 31 * System.identityHashCode(loader);
+        }
+
+        Key(Key key, ReferenceQueue<Object> queue)
+        {
+            this.string = key.string;
+            this.hashCode = key.hashCode;
+            // last; `this` escapes to the LoaderRef, which uses it as the map key once it is cleared
+            this.loader = (key.loader==null)? null : new LoaderRef((ClassLoader)key.loader, this, queue);
+        }
+
+        // a copy that references the loader weakly
+        Key weak(ReferenceQueue<Object> queue)
+        {
+            return new Key(this, queue);
+        }
+
+        ClassLoader loader()
+        {
+            return (loader instanceof LoaderRef)? ((LoaderRef)loader).get() : (ClassLoader)loader;
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        // once the loader is collected, equal only to itself
+        public boolean equals(Object obj)
+        {
+            if(obj==this)
+                return true;
+            if(!(obj instanceof Key))
+                return false;
+            Key that = (Key)obj;
+            if(!this.string.equals(that.string))
+                return false;
+            if(this.loader==null || that.loader==null)
+                return this.loader==that.loader;
+            ClassLoader loader = this.loader();
+            return loader!=null && loader==that.loader();
+        }
+    }
+
+    static class LoaderRef extends WeakReference<ClassLoader> implements ConversionCache.KeyRef
+    {
+        final Key key;
+
+        LoaderRef(ClassLoader loader, Key key, ReferenceQueue<Object> queue)
+        {
+            super(loader, queue);
+            this.key = key;
+        }
+
+        public Object mapKey()
+        {
+            return key;
+        }
+    }
+
+    final String string;
+    final ClassLoader loader;
+    int pos;
+
+    TypeParser(String string, ClassLoader loader)
+    {
+        this.string = string;
+        this.loader = loader;
+    }
+
+    ClassType<?> parse() throws IllegalArgumentException
+    {
+        ReferenceType<?> type = parseType();
+        skipSpaces();
+        if(pos<string.length())
+            throw error("unexpected character");
+        if(!(type instanceof ClassType))
+            throw error("not a class/interface type", 0);
+        return (ClassType<?>)type;
+    }
+
+    ReferenceType<?> parseType()
+    {
+        int start = skipSpaces();
+        String name = parseName();
+        Class<?> clazz = resolve(name, start);
+
+        JavaType<?> type;
+        if(clazz.isPrimitive())
+        {
+            type = PrimitiveType.of(clazz);
+        }
+        else
+        {
+            ArrayList<TypeArg> args = new ArrayList<TypeArg>();
+            if(peek()=='<')
+            {
+                pos++;
+                do
+                {
+                    args.add(parseTypeArg());
+                }
+                while(accept(','));
+                expect('>');
+            }
+            type = newClassType(clazz, args.toArray(new TypeArg[args.size()]), start);
+        }
+
+        while(accept('['))
+        {
+            expect(']');
+            type = new ArrayType<Object>(type);
+        }
+        if(type instanceof PrimitiveType)
+            throw error("primitive type is not allowed here", start);
+        return (ReferenceType<?>)type;
+    }
+
+    TypeArg parseTypeArg()
+    {
+        if(!accept('?'))
+            return parseType();
+
+        skipSpaces();
+        int start = pos;
+        if(Character.isJavaIdentifierStart(peek()))
+        {
+            String word = parseIdentifier();
+            if(word.equals("extends"))
+                return Wildcard.extends_(parseType());
+            if(word.equals("super"))
+                return Wildcard.super_(parseType());
+            pos = start;
+            throw error("expect `extends` or `super`");
+        }
+        return Wildcard.unbounded();
+    }
+
+    ClassType<?> newClassType(Class<?> clazz, TypeArg[] args, int start)
+    {
+        try
+        {
+            return new ClassType.Impl<Object>(true, clazz, args);
+        }
+        catch (AssertionError e) // not well formed
+        {
+            throw error(e.getMessage(), start);
+        }
+    }
+
+    // a.b.C$D.E
+    String parseName()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(parseIdentifier());
+        while(true)
+        {
+            skipSpaces();
+            if(pos<string.length() && (string.charAt(pos)=='.' || string.charAt(pos)=='$'))
+                sb.append(string.charAt(pos++)).append(parseIdentifier());
+            else
+                return sb.toString();
+        }
+    }
+
+    String parseIdentifier()
+    {
+        skipSpaces();
+        int start = pos;
+        if(pos<string.length() && Character.isJavaIdentifierStart(string.charAt(pos)))
+            pos++;
+        else
+            throw error("expect identifier");
+        while(pos<string.length() && string.charAt(pos)!='$' && Character.isJavaIdentifierPart(string.charAt(pos)))
+            pos++;
+        return string.substring(start, pos);
+    }
+
+    Class<?> resolve(String name, int start)
+    {
+        Class<?> clazz = primitive(name);
+        if(clazz!=null)
+            return clazz;
+
+        // a.b.C.D may be a.b.C$D, or a.b$C$D ...
+        String binaryName = name;
+        while(true)
+        {
+            clazz = forName(binaryName);
+            if(clazz!=null)
+                return clazz;
+            int dot = binaryName.lastIndexOf('.');
+            if(dot==-1)
+                break;
+            binaryName = binaryName.substring(0, dot) + '$' + binaryName.substring(dot+1);
+        }
+
+        if(name.indexOf('.')==-1 && name.indexOf('$')==-1) // simple name
+        {
+            clazz = forName("java.lang."+name);
+            if(clazz!=null)
+                return clazz;
+        }
+
+        throw error("class not found: "+name, start);
+    }
+
+    Class<?> forName(String name)
+    {
+        try
+        {
+            return Class.forName(name, false, loader);
+        }
+        catch (ClassNotFoundException e)
+        {
+            return null;
+        }
+        catch (LinkageError e) // e.g. case-insensitive file system finds a.b.Foo for a.b.foo
+        {
+            return null;
+        }
+    }
+
+    static Class<?> primitive(String name)
+    {
+        for(Class<?> c : PRIMITIVES)
+            if(c.getName().equals(name))
+                return c;
+        return null;
+    }
+    static final Class<?>[] PRIMITIVES = { boolean.class, byte.class, short.class, char.class,
+        int.class, long.class, float.class, double.class };
+
+    int skipSpaces()
+    {
+        while(pos<string.length() && Character.isWhitespace(string.charAt(pos)))
+            pos++;
+        return pos;
+    }
+
+    char peek()
+    {
+        skipSpaces();
+        return pos<string.length()? string.charAt(pos) : 0;
+    }
+
+    boolean accept(char c)
+    {
+        if(peek()!=c)
+            return false;
+        pos++;
+        return true;
+    }
+
+    void expect(char c)
+    {
+        if(!accept(c))
+            throw error("expect `"+c+"`");
+    }
+
+    IllegalArgumentException error(String msg)
+    {
+        return error(msg, pos);
+    }
+    IllegalArgumentException error(String msg, int at)
+    {
+        return new IllegalArgumentException(String.format("%s, at position %d of type string: %s", msg, at, string));
+    }
+}
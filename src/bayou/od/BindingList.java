@@ -2,29 +2,57 @@ package bayou.od;
 
 import _bayou._tmp._Array2ReadOnlyList;
 import bayou.od.OD.Binding;
+import bayou.od.OD.FilteredBinding;
+import bayou.od.OD.Predicate;
 
 import java.util.*;
 
-// list of bindings. indexed by applicable class. the only supported mutation is add().
+// list of bindings. indexed by applicable class.
+// mutations: add(), and replace()/remove(), which rebuild the index.
+//
+// with filtered bindings, only classes accepted by some filter get their own queues; other classes share
+// unfilteredBindings. so the index doesn't grow with every class looked up, and doesn't keep them from unloading.
+//
+// class filters of FilteredBindings are alien code. BindingList never invokes them; it only reads results
+// memoized by ClassFilter.test(). callers test filters beforehand, not under lock; see testFilters().
 class BindingList
 {
     final BindingQueue allBindings;
+    // getApplicableClasses() and classFilter() of allBindings, in the same order. for rebuilding.
+    final ArrayList<Set<? extends Class>> allAppClasses;
+    final ArrayList<ClassFilter> allFilters;
     // bindings that may apply to a class
     final HashMap<Class, BindingQueue> classBindings;
     // bindings whose applicable classes set is null, i.e. all classes.
+    // including filtered bindings, which apply to classes accepted by their filters.
     final BindingQueue wildBindings;
+    // filters of wildBindings, in the same order. null for a binding that applies to all classes.
+    final ArrayList<ClassFilter> wildFilters;
+    // wildBindings without filters; the bindings of a class that no filter accepts
+    final BindingQueue unfilteredBindings;
+    int nFiltered; // number of non-null in wildFilters
 
     BindingList()
     {
         allBindings = new BindingQueue();
+        allAppClasses = new ArrayList<Set<? extends Class>>();
+        allFilters = new ArrayList<ClassFilter>();
         classBindings = new HashMap<Class, BindingQueue>();
         wildBindings = new BindingQueue();
+        wildFilters = new ArrayList<ClassFilter>();
+        unfilteredBindings = new BindingQueue();
+        nFiltered = 0;
     }
     BindingList(BindingList that) //copy
     {
         this.allBindings = new BindingQueue(that.allBindings);
+        this.allAppClasses = new ArrayList<Set<? extends Class>>(that.allAppClasses);
+        this.allFilters = new ArrayList<ClassFilter>(that.allFilters);
         this.classBindings = copy(that.classBindings);
         this.wildBindings = new BindingQueue(that.wildBindings);
+        this.wildFilters = new ArrayList<ClassFilter>(that.wildFilters);
+        this.unfilteredBindings = new BindingQueue(that.unfilteredBindings);
+        this.nFiltered = that.nFiltered;
     }
     static HashMap<Class,BindingQueue> copy(HashMap<Class,BindingQueue> map)
     {
@@ -35,16 +63,175 @@ class BindingList
         return copy;
     }
 
+    // alien code; for a list that is not locked. see testFilters()
     void add(Binding binding)
     {
-        allBindings.add(binding);
         Set<? extends Class> appClasses = binding.getApplicableClasses();
+        ClassFilter filter = classFilter(binding, appClasses);
+        testFilter(filter);
+        add(binding, appClasses, filter);
+    }
+
+    // the class filter of a FilteredBinding, if it doesn't enumerate its applicable classes.
+    // return null if the binding applies to the enumerated classes, or to all classes.
+    // alien code; must not be called under lock.
+    static ClassFilter classFilter(Binding binding, Set<? extends Class> appClasses)
+    {
+        if(appClasses!=null)
+            return null;
+        if(binding instanceof DeferredBinding)
+            binding = ((DeferredBinding)binding).binding();
+        if(!(binding instanceof FilteredBinding))
+            return null;
+        Predicate<Class> filter = ((FilteredBinding)binding).getApplicableClassFilter();
+        return filter==null? null : new ClassFilter(filter);
+    }
+
+    static boolean applies(ClassFilter filter, Class clazz)
+    {
+        return filter==null || filter.accepts(clazz);
+    }
+
+    // a user class filter, with results memoized per class. weak keys; classes can be unloaded.
+    static class ClassFilter
+    {
+        final Predicate<Class> filter;
+        final Map<Class, Boolean> results = Collections.synchronizedMap(new WeakHashMap<Class, Boolean>());
+
+        ClassFilter(Predicate<Class> filter)
+        {
+            this.filter = filter;
+        }
+
+        // evaluate the filter for the class, if not yet. alien code; must not be called under lock.
+        void test(Class clazz)
+        {
+            if(!results.containsKey(clazz))
+                results.put(clazz, filter.test(clazz));
+        }
+
+        boolean tested(Class clazz)
+        {
+            return results.containsKey(clazz);
+        }
+
+        boolean testedAll(Collection<Class> classes)
+        {
+            for(Class clazz : classes)
+                if(!results.containsKey(clazz))
+                    return false;
+            return true;
+        }
+
+        // the memoized result. a class not yet tested is accepted; that is safe, only less precise:
+        // the binding is consulted for the class, and returns null if it doesn't apply.
+        boolean accepts(Class clazz)
+        {
+            Boolean result = results.get(clazz);
+            return result==null || result;
+        }
+    }
+
+    // whether any wild filter accepts the class, i.e. whether its bindings differ from unfilteredBindings
+    boolean anyAccepts(Class clazz)
+    {
+        for(ClassFilter filter : wildFilters)
+            if(filter!=null && filter.accepts(clazz))
+                return true;
+        return false;
+    }
+
+    // wild filters not yet tested for the class; null if none, or if the class is already indexed.
+    // test them before index(clazz) or forClass(clazz).
+    List<ClassFilter> untestedFilters(Class clazz)
+    {
+        if(nFiltered==0 || classBindings.containsKey(clazz))
+            return null;
+        ArrayList<ClassFilter> untested = null;
+        for(ClassFilter filter : wildFilters)
+        {
+            if(filter==null || filter.tested(clazz))
+                continue;
+            if(untested==null)
+                untested = new ArrayList<ClassFilter>();
+            untested.add(filter);
+        }
+        return untested;
+    }
+
+    // test wild filters for the class, before forClass(clazz). alien code; for a list that is not locked,
+    // i.e. local bindings, or sealed global bindings.
+    void testFilters(Class clazz)
+    {
+        List<ClassFilter> untested = untestedFilters(clazz);
+        if(untested!=null)
+            for(ClassFilter filter : untested)
+                filter.test(clazz);
+    }
+
+    // test the filter of a new binding for indexed classes, before add(). alien code; as testFilters()
+    void testFilter(ClassFilter filter)
+    {
+        if(filter!=null)
+            for(Class clazz : classBindings.keySet())
+                filter.test(clazz);
+    }
+
+    // same as add() for each binding, but grow each queue at most once.
+    // appClassesList: result of getApplicableClasses() for each binding
+    // filters: result of classFilter() for each binding
+    void addAll(List<Binding> bindings, List<Set<? extends Class>> appClassesList, List<ClassFilter> filters)
+    {
+        int wild = 0;
+        HashMap<Class, int[]> counts = new HashMap<Class, int[]>();
+        for(Set<? extends Class> appClasses : appClassesList)
+        {
+            if(appClasses==null)
+            {
+                wild++;
+                continue;
+            }
+            for(Class clazz : appClasses)
+            {
+                int[] count = counts.get(clazz);
+                if(count==null)
+                    counts.put(clazz, count = new int[1]);
+                count[0]++;
+            }
+        }
+
+        allBindings.ensureCapacity(allBindings.size + bindings.size());
+        wildBindings.ensureCapacity(wildBindings.size + wild);
+        for(Map.Entry<Class,BindingQueue> entry : classBindings.entrySet())
+        {
+            int[] count = counts.get(entry.getKey());
+            BindingQueue cb = entry.getValue();
+            cb.ensureCapacity(cb.size + wild + (count==null? 0 : count[0]) );
+        }
+        // new queues are created as needed, sized for preceding wild bindings. they grow as usual. no big deal.
+
+        for(int i=0; i<bindings.size(); i++)
+            add(bindings.get(i), appClassesList.get(i), filters.get(i));
+    }
+
+    // filter: only if appClasses==null. see classFilter()
+    void add(Binding binding, Set<? extends Class> appClasses, ClassFilter filter)
+    {
+        allBindings.add(binding);
+        allAppClasses.add(appClasses);
+        allFilters.add(filter);
         if(appClasses==null)
         {
             wildBindings.add(binding);
-            // this wild binding may apply to all classes
-            for(BindingQueue cb : classBindings.values())
-                cb.add(binding);
+            wildFilters.add(filter);
+            if(filter!=null)
+                nFiltered++;
+            else
+                unfilteredBindings.add(binding);
+            // this wild binding may apply to all classes, or to classes accepted by the filter
+            for(Map.Entry<Class,BindingQueue> entry : classBindings.entrySet())
+                if(applies(filter, entry.getKey()))
+                    entry.getValue().add(binding);
         }
         else
         {
@@ -53,25 +240,115 @@ class BindingList
                 BindingQueue cb = classBindings.get(clazz);
                 if(cb==null)
                 {
-                    // preceded by all prev wild bindings
-                    cb = new BindingQueue(wildBindings);
+                    cb = newClassQueue(clazz);
                     classBindings.put(clazz, cb);
                 }
                 cb.add(binding);
             }
         }
     }
-    // returned list is immutable, not affected by add(). this method is very cheap to call.
+
+    // remove all occurrences of the binding (by identity). return false if not found.
+    boolean remove(Binding binding)
+    {
+        return replace(binding, null, null, null);
+    }
+
+    // replace all occurrences of oldBinding (by identity) with newBinding, at the same positions.
+    // if newBinding==null, remove oldBinding. return false if oldBinding is not found.
+    // appClasses, filter: of newBinding
+    //
+    // the index is rebuilt, in O(n). that's fine; replacement should be infrequent.
+    // queues get new arrays; snapshots returned earlier are not affected.
+    boolean replace(Binding oldBinding, Binding newBinding, Set<? extends Class> appClasses, ClassFilter filter)
+    {
+        int N = allBindings.size;
+        ArrayList<Binding> bindings = new ArrayList<Binding>(N);
+        ArrayList<Set<? extends Class>> appClassesList = new ArrayList<Set<? extends Class>>(N);
+        ArrayList<ClassFilter> filters = new ArrayList<ClassFilter>(N);
+        boolean found = false;
+        for(int i=0; i<N; i++)
+        {
+            Binding binding = allBindings.array[i];
+            if(binding!=oldBinding)
+            {
+                bindings.add(binding);
+                appClassesList.add(allAppClasses.get(i));
+                filters.add(allFilters.get(i));
+            }
+            else
+            {
+                found = true;
+                if(newBinding==null)
+                    continue;
+                bindings.add(newBinding);
+                appClassesList.add(appClasses);
+                filters.add(filter);
+            }
+        }
+        if(!found)
+            return false;
+
+        // classes that were indexed without explicit bindings, i.e. accepted by filters; see index()
+        ArrayList<Class> indexedClasses = new ArrayList<Class>(classBindings.keySet());
+
+        allBindings.clear();
+        allAppClasses.clear();
+        allFilters.clear();
+        classBindings.clear();
+        wildBindings.clear();
+        wildFilters.clear();
+        unfilteredBindings.clear();
+        nFiltered = 0;
+
+        addAll(bindings, appClassesList, filters);
+        for(Class clazz : indexedClasses)
+            index(clazz);
+        return true;
+    }
+
+    // preceded by all prev wild bindings that apply to the class
+    BindingQueue newClassQueue(Class clazz)
+    {
+        if(nFiltered==0)
+            return new BindingQueue(wildBindings);
+
+        BindingQueue cb = new BindingQueue();
+        cb.ensureCapacity(wildBindings.size);
+        for(int i=0; i<wildBindings.size; i++)
+            if(applies(wildFilters.get(i), clazz))
+                cb.add(wildBindings.array[i]);
+        return cb;
+    }
+
+    // create the queue for the class, if some filter accepts it; other classes share unfilteredBindings.
+    // afterwards, forClass(clazz) is cheap. filters should have been tested for the class; see untestedFilters()
+    void index(Class clazz)
+    {
+        if(nFiltered>0 && !classBindings.containsKey(clazz) && anyAccepts(clazz))
+            classBindings.put(clazz, newClassQueue(clazz));
+    }
+
+    // returned list is immutable, not affected by add(). this method is very cheap to call,
+    // except for a class that is not indexed, when there are filtered bindings; the filters are consulted.
+    // this method doesn't modify the index; it can be called concurrently if there's no add().
     List<Binding> forClass(Class clazz)
     {
         BindingQueue cb = classBindings.get(clazz);
-        if(cb==null)
-            cb = wildBindings;
+        if(cb!=null)
+            return cb.snapshot();
+
+        if(nFiltered==0)
+            return wildBindings.snapshot();
+
+        if(!anyAccepts(clazz))
+            return unfilteredBindings.snapshot();
 
-        return cb.snapshot();
+        cb = newClassQueue(clazz);
+        return new _Array2ReadOnlyList<Binding>(cb.array, 0, cb.size);
     }
 
-    // only supported mutation is add(). can cheaply return an immutable snapshot.
+    // supported mutations are add() and clear(). can cheaply return an immutable snapshot.
     // concurrency note: this class is single threaded; locking is done by higher up.
     static class BindingQueue
     {
@@ -92,6 +369,20 @@ class BindingList
             this.prev_snapshot = that.prev_snapshot;
         }
 
+        void clear()
+        {
+            // don't touch the array; it may be referenced by snapshots.
+            this.array = new Binding[16];
+            this.size = 0;
+            prev_snapshot = Collections.emptyList();
+        }
+
+        void ensureCapacity(int capacity)
+        {
+            if(array.length < capacity)
+                array = Arrays.copyOf(array, capacity);
+        }
+
         void add(Binding e)
         {
             int capacity = array.length;
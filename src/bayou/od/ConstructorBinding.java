@@ -3,7 +3,6 @@ package bayou.od;
 import bayou.jtype.ClassType;
 import bayou.jtype.TypeMath;
 
-import java.lang.reflect.Constructor;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Set;
@@ -14,10 +13,11 @@ class ConstructorBinding<X> implements OD.Binding
 {
     final ClassType<X> type;
     final Predicate<Object[]> tagMatcher;
-    final Constructor<X> constructor;
+    final TypeArgConstructor constructor;
     final Object[] constructorArgs;
+    Supplier<X> supplier; // created lazily; can be expensive. benign race.
 
-    public ConstructorBinding(ClassType<X> type, Predicate<Object[]> tagMatcher, Constructor<X> constructor, Object[] constructorArgs)
+    public ConstructorBinding(ClassType<X> type, Predicate<Object[]> tagMatcher, TypeArgConstructor constructor, Object[] constructorArgs)
     {
         this.type = type;
         this.tagMatcher = tagMatcher;
@@ -36,7 +36,9 @@ class ConstructorBinding<X> implements OD.Binding
         if(!OD.match(this.type, type, this.tagMatcher, tags))
             return null;
 
-        ConstructorSupplier<X> supplier = new ConstructorSupplier<X>(constructor, constructorArgs);
+        Supplier<X> supplier = this.supplier;
+        if(supplier==null)
+            this.supplier = supplier = constructor.supplier(constructorArgs);
         return OD.cast(supplier); // T=X
     }
 
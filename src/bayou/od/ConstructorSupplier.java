@@ -5,19 +5,111 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import bayou.od.OD.Supplier;
 
+// invokes a constructor reflectively. see also factory(), which may create faster suppliers.
 class ConstructorSupplier<T> implements Supplier<T>
 {
+    // creates suppliers that invoke constructors without reflection.
+    // bayou.od.MethodHandleInstantiator (module od-jdk8) is used if it's on the classpath.
+    interface Instantiator
+    {
+        // return null if not supported for the constructor.
+        // it may be expensive to create the factory, e.g. it spins a class; it's created once per constructor.
+        <T> Factory<T> factory(Constructor<T> constructor) throws Exception;
+    }
+
+    // creates suppliers that invoke a constructor with a1..ak. creating a supplier is cheap.
+    interface Factory<T>
+    {
+        Supplier<T> supplier(Object[] args) throws Exception;
+    }
+
+    static final Instantiator instantiator = loadInstantiator();
+
+    static Instantiator loadInstantiator()
+    {
+        try
+        {
+            Class<?> clazz = Class.forName("bayou.od.MethodHandleInstantiator");
+            return (Instantiator)clazz.newInstance();
+        }
+        catch (Throwable t) // not on classpath; or Java version < 8
+        {
+            return null;
+        }
+    }
+
+    // a factory of suppliers that invoke the constructor, by the instantiator if possible, otherwise by reflection.
+    // the constructor must be accessible, i.e. setAccessible(true) if necessary.
+    // it may be expensive to create the factory; the caller should reuse it. see TypeArgConstructor
+    static <T> FallbackFactory<T> factory(Constructor<T> constructor)
+    {
+        Factory<T> spun = null;
+        Exception fallbackCause = null;
+        if(instantiator!=null)
+        {
+            try
+            {
+                spun = instantiator.factory(constructor);
+            }
+            catch (Exception e) // fall back to reflection
+            {
+                fallbackCause = e;
+            }
+        }
+        return new FallbackFactory<T>(constructor, spun, fallbackCause);
+    }
+
+    // uses the instantiator's factory if any; otherwise, or if it fails, creates ConstructorSupplier.
+    static class FallbackFactory<T> implements Factory<T>
+    {
+        final Constructor<T> constructor;
+        final Factory<T> spun; // null if not available
+        volatile Exception fallbackCause; // why the instantiator failed, if it did. for diagnosis
+
+        FallbackFactory(Constructor<T> constructor, Factory<T> spun, Exception fallbackCause)
+        {
+            this.constructor = constructor;
+            this.spun = spun;
+            this.fallbackCause = fallbackCause;
+        }
+
+        public Supplier<T> supplier(Object[] args)
+        {
+            if(spun!=null)
+            {
+                try
+                {
+                    return spun.supplier(args);
+                }
+                catch (Exception e) // fall back to reflection
+                {
+                    fallbackCause = e;
+                }
+            }
+            return new ConstructorSupplier<T>(constructor, args, fallbackCause);
+        }
+    }
+
     final Constructor<T> constructor;
     final Object[] args;
+    final Exception fallbackCause; // why reflection is used, if the instantiator failed. can be null
 
     ConstructorSupplier(Constructor<T> constructor, Object... args)
+    {
+        this(constructor, args, null);
+    }
+    ConstructorSupplier(Constructor<T> constructor, Object[] args, Exception fallbackCause)
     {
         this.constructor = constructor;
         this.args = args;
+        this.fallbackCause = fallbackCause;
     }
 
     public String toString()
     {
+        if(fallbackCause!=null)
+            return String.format("ConstructorSupplier(constructor=%s, args=%s, fallbackCause=%s)",
+                constructor, Arrays.toString(args), fallbackCause);
         return String.format("ConstructorSupplier(constructor=%s, args=%s)",
             constructor, Arrays.toString(args));
     }
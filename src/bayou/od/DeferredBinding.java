@@ -0,0 +1,131 @@
+package bayou.od;
+
+import bayou.jtype.ClassType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import bayou.od.OD.Binding;
+import bayou.od.OD.Supplier;
+
+// a binding that is expensive to create, e.g. ImplClassBinding, which requires reflection.
+// it is created later by prepare(), before it is added to a binding list. see OD.BindingBatch.
+// this object stands for the actual binding, so that the caller can hold on to it as "the binding".
+class DeferredBinding implements Binding
+{
+    final Supplier<? extends Binding> factory;
+    Binding binding; // set by prepare(). then safely published along with this object.
+
+    DeferredBinding(Supplier<? extends Binding> factory)
+    {
+        this.factory = factory;
+    }
+
+    void prepare() throws RuntimeException
+    {
+        if(binding==null)
+            binding = factory.get(); // throws
+    }
+
+    Binding binding()
+    {
+        Binding b = binding;
+        if(b==null)
+            throw new IllegalStateException("the binding is not prepared; is the batch committed?");
+        return b;
+    }
+
+    public <T> Supplier<? extends T> map(ClassType<T> type, Object... tags)
+    {
+        return binding().map(type, tags);
+    }
+
+    public Set<? extends Class> getApplicableClasses()
+    {
+        return binding().getApplicableClasses();
+    }
+
+    public String toString()
+    {
+        Binding b = binding;
+        return (b==null)? "DeferredBinding(not prepared)" : b.toString();
+    }
+
+    // -------------------------------------------------------------------------------------------------
+
+    // preparation is mostly reflection on different classes; it parallelizes well.
+    // but it's not worth it to start threads for a small number of bindings.
+    static final int PARALLEL_THRESHOLD = 128;
+
+    // prepare all. if any fails, throw the exception of the first failed one (in list order)
+    static void prepareAll(final List<DeferredBinding> list) throws RuntimeException
+    {
+        final int N = list.size();
+        int nThreads = Math.min(Runtime.getRuntime().availableProcessors(), N/PARALLEL_THRESHOLD);
+        if(nThreads<=1)
+        {
+            for(DeferredBinding db : list)
+                db.prepare(); // throws
+            return;
+        }
+
+        final Throwable[] errors = new Throwable[N];
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads, new ThreadFactory()
+        {
+            final AtomicInteger seq = new AtomicInteger(0);
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "OD-prepare-bindings-"+seq.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try
+        {
+            // thread x prepares bindings x, x+n, x+2n, ...
+            final int stride = nThreads;
+            ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>(nThreads);
+            for(int x=0; x<nThreads; x++)
+            {
+                final int start = x;
+                tasks.add(new Callable<Void>()
+                {
+                    public Void call()
+                    {
+                        for(int i=start; i<N; i+=stride)
+                        {
+                            try
+                            {   list.get(i).prepare();   }
+                            catch(Throwable t)
+                            {   errors[i] = t;   }
+                        }
+                        return null;
+                    }
+                });
+            }
+            pool.invokeAll(tasks); // tasks don't throw. happens-before: prepared bindings are visible to us.
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while preparing bindings", e);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        for(Throwable t : errors)
+        {
+            if(t==null)
+                continue;
+            if(t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            if(t instanceof Error)
+                throw (Error)t;
+            throw new RuntimeException(t); // not likely, factories don't throw checked exceptions
+        }
+    }
+}
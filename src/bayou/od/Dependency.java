@@ -0,0 +1,64 @@
+package bayou.od;
+
+import bayou.jtype.ClassType;
+
+import bayou.od.OD.Supplier;
+import bayou.od.OD.TypeAndTags;
+
+// a dependency parameter of an injecting constructor; see TypeArgConstructor.
+// get() is equivalent to OD.get(type), i.e. with no tags.
+//
+// the global lookup is resolved once, and the supplier is reused until global bindings change;
+// constructing an object then costs direct supplier calls, instead of keyed lookups.
+// if the thread has local bindings, or warm-up is in progress, we do the full OD.get().
+//
+// instances are created along with a1..ak, which are memoized per B<v1..vm> in TypeArgConstructor.argsMemo;
+// so a Dependency is shared by all bindings to the same B<v1..vm>, not created per binding.
+class Dependency
+{
+    static final Object[] NO_TAGS = {};
+
+    final ClassType<?> type;
+    final TypeAndTags<?> tnt;
+    volatile Resolved resolved;
+
+    Dependency(ClassType<?> type)
+    {
+        this.type = type;
+        this.tnt = new TypeAndTags<Object>(OD.<ClassType<Object>>cast(type), NO_TAGS);
+    }
+
+    static class Resolved
+    {
+        final int version; // of global bindings, before lookup
+        final Supplier<?> supplier;
+
+        Resolved(int version, Supplier<?> supplier)
+        {
+            this.version = version;
+            this.supplier = supplier;
+        }
+    }
+
+    Object get() throws RuntimeException
+    {
+        if(WarmUp.active || LocalBindings.current()!=null)
+            return OD.get(type, NO_TAGS);
+
+        Resolved r = resolved;
+        if(r==null || r.version!=GlobalBindings.version)
+        {
+            int version = GlobalBindings.version; // if bindings change during lookup, we'll resolve again
+            Supplier<?> supplier = GlobalBindings.getSupplier(tnt); // throws
+            if(supplier==null)
+                throw new OD.NotFoundException(type, NO_TAGS);
+            resolved = r = new Resolved(version, supplier);
+        }
+        return r.supplier.get();
+    }
+
+    public String toString()
+    {
+        return "Dependency("+type.toString(false)+")";
+    }
+}
@@ -0,0 +1,39 @@
+package bayou.od;
+
+import java.lang.annotation.*;
+
+/**
+ * Request a factory to be generated at compile time for an implementation class, or a supplier class.
+ * <p>
+ *     For example
+ * </p>
+ * <pre>
+ *     &#64;GenerateFactory
+ *     public class FooImpl&lt;T&gt; implements Foo&lt;T&gt;
+ *     {
+ *         public FooImpl(Class&lt;T&gt; classT)
+ *         ...
+ * </pre>
+ * <p>
+ *     If the annotation processor of module `od-processor` is on the compiler's processor path,
+ *     it generates a {@link GeneratedFactory} for `FooImpl`, which invokes the
+ *     type-arg constructor (see {@link OD.BindingBuilder#to(Class)}) in plain Java code.
+ *     At runtime, <code>bind(Foo.class).to(FooImpl.class)</code> uses the generated factory, if it's present,
+ *     instead of finding and invoking the constructor by reflection.
+ * </p>
+ * <p>
+ *     If there's no type-arg constructor, and the class has exactly one constructor, the factory invokes it
+ *     as an injecting constructor; its dependency parameters are resolved by <code>OD.get()</code>
+ *     for each new instance, same as at runtime. A dependency type must not contain type variables.
+ * </p>
+ * <p>
+ *     The class must be a top level class, or a static member class; it must not be abstract.
+ *     The type-arg constructor, or the injecting constructor, must not be private.
+ * </p>
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateFactory
+{
+}
@@ -0,0 +1,167 @@
+package bayou.od;
+
+import bayou.jtype.ClassType;
+
+import java.util.Arrays;
+
+/**
+ * Base class of factories generated by the annotation processor; see {@link GenerateFactory}.
+ * <p>
+ *     Application code does not use this class directly.
+ * </p>
+ * <p>
+ *     The factory of class <code>com.example.FooImpl</code> is named
+ *     <code>com.example.FooImpl$ODFactory</code>.
+ *     It has a public no-arg constructor, which passes the description of the type-arg constructor
+ *     to {@link #GeneratedFactory(Class, Class[], int[])}, or the description of the injecting constructor
+ *     to {@link #GeneratedFactory(Class, Class[], int[], String[])}.
+ * </p>
+ */
+public abstract class GeneratedFactory
+{
+    /**
+     * Suffix of the names of generated factories.
+     */
+    public static final String SUFFIX = "$ODFactory";
+
+    final Class<?> implClass;
+    final Class[] argC;
+    final int[] argU;
+    final String[] argDep; // null if no dependency
+
+    /**
+     * Describe the type-arg constructor <code>B(A1..Ak)</code> of class <code>B&lt;V1..Vm&gt;</code>.
+     * <p>
+     *     Each parameter type <code>Ai</code> is in the form of <code>Ci&lt;Vj&gt;</code>;
+     *     <code>argC[i]=Ci</code>, <code>argU[i]=j</code>.
+     * </p>
+     */
+    protected GeneratedFactory(Class<?> implClass, Class[] argC, int[] argU)
+    {
+        if(argC.length!=argU.length) throw new IllegalArgumentException("argC.length!=argU.length");
+
+        this.implClass = implClass;
+        this.argC = argC;
+        this.argU = argU;
+        this.argDep = null;
+    }
+
+    /**
+     * Describe the injecting constructor <code>B(A1..Ak)</code> of class <code>B&lt;V1..Vm&gt;</code>.
+     * <p>
+     *     Each parameter type <code>Ai</code> is either in the form of <code>Ci&lt;Vj&gt;</code>, as above,
+     *     and <code>argDep[i]=null</code>; or it's a dependency, resolved by <code>OD.get(Ai)</code>;
+     *     then <code>argC[i]</code> is the class of <code>Ai</code>, <code>argU[i]=-1</code>,
+     *     and <code>argDep[i]</code> is <code>Ai</code> in the format of
+     *     {@link ClassType#toString(boolean) ClassType.toString(true)}.
+     * </p>
+     */
+    protected GeneratedFactory(Class<?> implClass, Class[] argC, int[] argU, String[] argDep)
+    {
+        if(argC.length!=argU.length) throw new IllegalArgumentException("argC.length!=argU.length");
+        if(argC.length!=argDep.length) throw new IllegalArgumentException("argC.length!=argDep.length");
+        for(int i=0; i<argU.length; i++)
+            if((argU[i]==-1) != (argDep[i]!=null))
+                throw new IllegalArgumentException("argU["+i+"]==-1 iff argDep["+i+"]!=null");
+
+        this.implClass = implClass;
+        this.argC = argC;
+        this.argU = argU;
+        this.argDep = argDep;
+    }
+
+    /**
+     * Invoke the type-arg constructor with the args.
+     */
+    protected abstract Object newInstance(Object[] args) throws Exception;
+
+    public String toString()
+    {
+        if(argDep!=null)
+            return String.format("GeneratedFactory(class=%s, argC=%s, argU=%s, argDep=%s)",
+                implClass.getName(), Arrays.toString(argC), Arrays.toString(argU), Arrays.toString(argDep));
+        return String.format("GeneratedFactory(class=%s, argC=%s, argU=%s)",
+            implClass.getName(), Arrays.toString(argC), Arrays.toString(argU));
+    }
+
+    // dependency types, parsed from argDep, in the class loader of implClass. null if no dependency
+    ClassType<?>[] dependencies() throws RuntimeException
+    {
+        if(argDep==null)
+            return null;
+        ClassType<?>[] deps = new ClassType<?>[argDep.length];
+        for(int i=0; i<argDep.length; i++)
+            if(argDep[i]!=null)
+                deps[i] = ClassType.parse(argDep[i], implClass.getClassLoader()); // throws
+        return deps;
+    }
+
+    // return null if there's no generated factory for the class
+    static GeneratedFactory find(Class<?> clazz) throws RuntimeException
+    {
+        Class<?> factoryClass;
+        try
+        {
+            factoryClass = Class.forName(clazz.getName()+SUFFIX, true, clazz.getClassLoader());
+        }
+        catch (ClassNotFoundException e) // common case
+        {
+            return null;
+        }
+        catch (LinkageError e) // e.g. stale class file; ignore it
+        {
+            return null;
+        }
+        if(!GeneratedFactory.class.isAssignableFrom(factoryClass))
+            return null; // not ours
+
+        GeneratedFactory factory;
+        try
+        {   factory = (GeneratedFactory)ConstructorSupplier.newInstance(factoryClass.getConstructor());   }
+        catch (NoSuchMethodException e)
+        {   throw new IllegalStateException("no public no-arg constructor in "+factoryClass);   }
+        if(factory.implClass!=clazz)
+            throw new IllegalStateException(String.format("%s is not for %s", factory, clazz));
+        return factory;
+    }
+
+    // wrap checked exceptions, like ConstructorSupplier
+    Object newInstance0(Object[] args) throws RuntimeException
+    {
+        try
+        {
+            return newInstance(args);
+        }
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Exception e) // checked
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static class FactorySupplier<T> implements OD.Supplier<T>
+    {
+        final GeneratedFactory factory;
+        final Object[] args;
+
+        FactorySupplier(GeneratedFactory factory, Object[] args)
+        {
+            this.factory = factory;
+            this.args = args;
+        }
+
+        public String toString()
+        {
+            return String.format("FactorySupplier(factory=%s, args=%s)", factory, Arrays.toString(args));
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get()
+        {
+            return (T)factory.newInstance0(args);
+        }
+    }
+}
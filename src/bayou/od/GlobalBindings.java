@@ -7,38 +7,302 @@ import bayou.od.OD.Supplier;
 import bayou.jtype.TypeMath;
 import bayou.od.OD.TypeAndTags;
 import bayou.od.OD.Binding;
+import bayou.od.BindingList.ClassFilter;
 
 class GlobalBindings
 {
     // we have only very short locking blocks. no alien code is invoked under lock.
+    // that includes class filters; they are tested before locking, and the results are used under lock.
+    // if classes of interest are added meanwhile, we unlock, test them, and retry. see untested()
     static final Object lock = new Object();
 
-    static int version = 0;
+    static volatile int version = 0; // written under lock. read without lock by Dependency
     static final BindingList globalList = new BindingList();
 
     static final ConcurrentHashMap<TypeAndTags, Supplier> cache = new ConcurrentHashMap<TypeAndTags, Supplier>();
     static final HashSet<Class> cachedClasses = new HashSet<Class>(); // classes covered by cache
 
+    // after OD.seal(). no more changes to globalList; lookups go through `sealed` without locking.
+    static boolean sealing; // guarded by lock
+    static volatile SealedBindings sealed;
+
     static void addGlobal(Binding binding)
     {
+        // alien code; done before locking
+        Set<? extends Class> appClasses = binding.getApplicableClasses();
+        ClassFilter filter = BindingList.classFilter(binding, appClasses);
+        List<ClassFilter> filters = Collections.singletonList(filter);
+
+        while(true)
+        {
+            ArrayList<Class> untested;
+            synchronized (lock)
+            {
+                checkNotSealed();
+                untested = untested(filters);
+                if(untested==null)
+                {
+                    version++;
+                    globalList.add(binding, appClasses, filter);
+                    fixCache(appClasses, filter);
+                    return;
+                }
+            }
+            test(filters, untested);
+        }
+    }
+
+    // add bindings with one lock, one version bump, one cache invalidation pass
+    static void addGlobalAll(List<Binding> bindings)
+    {
+        if(bindings.isEmpty())
+            return;
+
+        // alien code; done before locking
+        ArrayList<Set<? extends Class>> appClassesList = new ArrayList<Set<? extends Class>>(bindings.size());
+        ArrayList<ClassFilter> filters = new ArrayList<ClassFilter>(bindings.size());
+        for(Binding binding : bindings)
+        {
+            Set<? extends Class> appClasses = binding.getApplicableClasses();
+            appClassesList.add(appClasses);
+            filters.add(BindingList.classFilter(binding, appClasses));
+        }
+
+        while(true)
+        {
+            ArrayList<Class> untested;
+            synchronized (lock)
+            {
+                checkNotSealed();
+                untested = untested(filters);
+                if(untested==null)
+                {
+                    version++;
+                    globalList.addAll(bindings, appClassesList, filters);
+                    fixCache(appClassesList, filters);
+                    return;
+                }
+            }
+            test(filters, untested);
+        }
+    }
+
+    // replace oldBinding with newBinding, at the same position. if newBinding==null, remove oldBinding.
+    // return false if oldBinding is not in the list.
+    static boolean replaceGlobal(Binding oldBinding, Binding newBinding)
+    {
+        // alien code; done before locking
+        Set<? extends Class> oldAppClasses = oldBinding.getApplicableClasses();
+        ClassFilter oldFilter = BindingList.classFilter(oldBinding, oldAppClasses);
+        Set<? extends Class> newAppClasses = null;
+        ClassFilter newFilter = null;
+        if(newBinding!=null)
+        {
+            newAppClasses = newBinding.getApplicableClasses();
+            newFilter = BindingList.classFilter(newBinding, newAppClasses);
+        }
+
+        // oldFilter is memoized separately from the one in globalList; both are tested.
+        List<ClassFilter> filters = Arrays.asList(oldFilter, newFilter);
+
+        // cache entries of affected classes. some of them may still be valid after the replacement.
+        int _version;
+        HashSet<TypeAndTags> candidates = new HashSet<TypeAndTags>();
+        while(true)
+        {
+            ArrayList<Class> untested;
+            synchronized (lock)
+            {
+                checkNotSealed();
+                untested = untested(filters);
+                if(untested==null)
+                {
+                    _version = version;
+                    for(TypeAndTags tnt : cache.keySet())
+                    {
+                        Class clazz = tnt.type.getTheClass();
+                        if(affects(oldAppClasses, oldFilter, clazz) || (newBinding!=null && affects(newAppClasses, newFilter, clazz)))
+                            candidates.add(tnt);
+                    }
+                    break;
+                }
+            }
+            test(filters, untested);
+        }
+
+        // an entry stays valid if neither binding applies to its (type,tags). alien code; not under lock.
+        HashSet<TypeAndTags> evict = new HashSet<TypeAndTags>();
+        for(TypeAndTags tnt : candidates)
+            if(appliesTo(oldBinding, tnt) || (newBinding!=null && appliesTo(newBinding, tnt)))
+                evict.add(tnt);
+
+        while(true)
+        {
+            ArrayList<Class> untested;
+            synchronized (lock)
+            {
+                checkNotSealed();
+                untested = untested(filters);
+                if(untested==null)
+                    return replaceGlobal(oldBinding, newBinding, oldAppClasses, oldFilter, newAppClasses, newFilter,
+                        _version, candidates, evict);
+            }
+            test(filters, untested);
+        }
+    }
+    static boolean replaceGlobal(Binding oldBinding, Binding newBinding,
+                                 Set<? extends Class> oldAppClasses, ClassFilter oldFilter,
+                                 Set<? extends Class> newAppClasses, ClassFilter newFilter,
+                                 int _version, HashSet<TypeAndTags> candidates, HashSet<TypeAndTags> evict)
+    {
+        // caller holds lock; filters are tested
+
+        if(!globalList.replace(oldBinding, newBinding, newAppClasses, newFilter))
+            return false;
+
+        // if bindings were changed meanwhile, our test results may be wrong; evict all candidates.
+        boolean tested = (version==_version);
+        version++;
+
+        if(cachedClasses.isEmpty())
+            return true;
+        Iterator<Map.Entry<TypeAndTags, Supplier>> iter = cache.entrySet().iterator();
+        while(iter.hasNext())
+        {
+            TypeAndTags tnt = iter.next().getKey();
+            // an entry that is not a candidate, yet of an affected class, was added after we looked
+            if(evict.contains(tnt) || (!tested || !candidates.contains(tnt)) && (
+                    affects(oldAppClasses, oldFilter, tnt.type.getTheClass()) ||
+                    newBinding!=null && affects(newAppClasses, newFilter, tnt.type.getTheClass())))
+                iter.remove();
+        }
+        // cachedClasses may now contain classes with no entries; that's fine.
+        return true;
+    }
+
+    // whether a binding with the appClasses and filter may apply to the class
+    static boolean affects(Set<? extends Class> appClasses, ClassFilter filter, Class clazz)
+    {
+        if(appClasses!=null)
+            return appClasses.contains(clazz);
+        return BindingList.applies(filter, clazz); // memoized result; no alien code
+    }
+
+    // classes the filters must be tested for, before they are used under lock: indexed classes and cached classes.
+    // return null if all are tested. caller holds lock.
+    static ArrayList<Class> untested(List<ClassFilter> filters)
+    {
+        for(ClassFilter filter : filters)
+        {
+            if(filter==null)
+                continue;
+            if(!filter.testedAll(globalList.classBindings.keySet()) || !filter.testedAll(cachedClasses))
+            {
+                ArrayList<Class> classes = new ArrayList<Class>(globalList.classBindings.keySet());
+                classes.addAll(cachedClasses);
+                return classes;
+            }
+        }
+        return null;
+    }
+    // alien code; caller must not hold lock
+    static void test(List<ClassFilter> filters, List<Class> classes)
+    {
+        for(ClassFilter filter : filters)
+            if(filter!=null)
+                for(Class clazz : classes)
+                    filter.test(clazz);
+    }
+
+    static boolean appliesTo(Binding binding, TypeAndTags<?> tnt)
+    {
+        try
+        {
+            return binding.map(tnt.type, tnt.tags)!=null;
+        }
+        catch (RuntimeException e) // treat it as applicable
+        {
+            return true;
+        }
+    }
+
+    static void checkNotSealed()
+    {
+        // caller holds lock
+        if(sealing)
+            throw new IllegalStateException("global bindings are sealed");
+    }
+
+    static void seal()
+    {
+        BindingList _globalList;
+        HashMap<TypeAndTags, Supplier> _cache;
+        synchronized (lock)
+        {
+            if(sealing)
+                return;
+            sealing = true; // no more changes from now on
+            _globalList = globalList;
+            _cache = new HashMap<TypeAndTags, Supplier>(cache);
+        }
+
+        // invokes alien code; must not hold lock. lookups continue to work meanwhile, through the cache.
+        SealedBindings _sealed = new SealedBindings(_globalList, _cache);
+
         synchronized (lock)
         {
-            version++;
-            globalList.add(binding);
-            fixCache(binding);
+            sealed = _sealed;
+            cache.clear();
+            cachedClasses.clear();
         }
     }
 
-    static List<Binding> snapshot(Class clazz)
+    // all global bindings, in order. a copy
+    static List<Binding> allBindings()
     {
+        SealedBindings _sealed = sealed;
+        if(_sealed!=null)
+            return copy(_sealed.globalList.allBindings);
+
         synchronized (lock)
         {
-            return globalList.forClass(clazz);
+            return copy(globalList.allBindings);
+        }
+    }
+    static List<Binding> copy(BindingList.BindingQueue queue)
+    {
+        return Arrays.asList(Arrays.copyOf(queue.array, queue.size));
+    }
+
+    static List<Binding> snapshot(Class clazz)
+    {
+        SealedBindings _sealed = sealed;
+        if(_sealed!=null)
+            return _sealed.globalList.forClass(clazz);
+
+        while(true)
+        {
+            List<ClassFilter> untested;
+            synchronized (lock)
+            {
+                untested = globalList.untestedFilters(clazz);
+                if(untested==null)
+                {
+                    globalList.index(clazz);
+                    return globalList.forClass(clazz);
+                }
+            }
+            for(ClassFilter filter : untested) // alien code; not under lock
+                filter.test(clazz);
         }
     }
 
     static <T> Supplier<T> getSupplier(TypeAndTags<T> tnt)
     {
+        SealedBindings _sealed = sealed;
+        if(_sealed!=null)
+            return _sealed.getSupplier(tnt);
+
         // in most cases will return quickly with just one concurrent map lookup.
         Supplier supplier = cache.get(tnt);
         if(supplier ==null)
@@ -46,10 +310,22 @@ class GlobalBindings
             Class clazz = tnt.type.getTheClass();
             int _version;
             List<Binding> _globalList;
-            synchronized (lock)
+            while(true)
             {
-                _version = GlobalBindings.version;
-                _globalList = GlobalBindings.globalList.forClass(clazz);
+                List<ClassFilter> untested;
+                synchronized (lock)
+                {
+                    untested = GlobalBindings.globalList.untestedFilters(clazz);
+                    if(untested==null)
+                    {
+                        _version = GlobalBindings.version;
+                        GlobalBindings.globalList.index(clazz);
+                        _globalList = GlobalBindings.globalList.forClass(clazz);
+                        break;
+                    }
+                }
+                for(ClassFilter filter : untested) // alien code; not under lock
+                    filter.test(clazz);
             }
 
             // must not hold lock - we are invoking alien code, they could be slow
@@ -82,42 +358,61 @@ class GlobalBindings
     //   (or the cache contains only a few entries, no big deal to clear them.)
     //   if a global binding is added sometime later, it could clear lots of cache entries.
     //   that is an acceptable punishment for improper usage.
-    static void fixCache(Binding newBinding)
+    static void fixCache(Set<? extends Class> appClasses, ClassFilter filter)
     {
         // caller holds lock
 
         if(cachedClasses.isEmpty()) // common case during init global bindings
             return;
-        // testing cache.isEmpty() would be more expensive
-
-        // a cache entry may become invalid, if type.class is applicable in the new binding.
-        // we don't do more sophisticated stuff, e.g. test newBinding.getSupplier(tnt)
+        fixCache(Collections.<Set<? extends Class>>singletonList(appClasses),
+                 Collections.singletonList(filter));
+    }
+    static void fixCache(List<Set<? extends Class>> appClassesList, List<ClassFilter> filters)
+    {
+        // caller holds lock
 
-        Set<? extends Class> appClasses = newBinding.getApplicableClasses();
-        if(appClasses==null) // this should be very rare. don't return null!
-        {
-            // no idea what classes this new binding may affect. clear all.
-            cache.clear();           // O(n), n=capacity
-            cachedClasses.clear();   // O(n)
+        if(cachedClasses.isEmpty()) // common case during init global bindings
             return;
-        }
 
-        for(Class clazz : appClasses) // most likely the set contains only 1 class
+        HashSet<Class> evictClasses = new HashSet<Class>();
+        for(int i=0; i<appClassesList.size(); i++)
         {
-            // usually a new binding is for a new class, which has not been covered in the cache
-            if(!cachedClasses.contains(clazz)) // common case
+            Set<? extends Class> appClasses = appClassesList.get(i);
+            ClassFilter filter = filters.get(i);
+            if(filter!=null)
+            {
+                // evict only classes accepted by the filter. memoized results; no alien code
+                for(Class clazz : cachedClasses)
+                    if(filter.accepts(clazz))
+                        evictClasses.add(clazz);
                 continue;
-
-            // rare case: some cache entries are for this clazz; evict them.
-            Iterator<Map.Entry<TypeAndTags, Supplier>> iter = cache.entrySet().iterator();
-            while(iter.hasNext()) // note: no one else is updating cache concurrently
+            }
+            if(appClasses==null) // this should be very rare. don't return null!
+            {
+                // no idea what classes this new binding may affect. clear all.
+                cache.clear();           // O(n), n=capacity
+                cachedClasses.clear();   // O(n)
+                return;
+            }
+            for(Class clazz : appClasses) // most likely the set contains only 1 class
             {
-                Map.Entry<TypeAndTags, Supplier> entry = iter.next();
-                if(clazz==entry.getKey().type.getTheClass())
-                    iter.remove();
+                // usually a new binding is for a new class, which has not been covered in the cache
+                if(cachedClasses.contains(clazz)) // rare case
+                    evictClasses.add(clazz);
             }
-            cachedClasses.remove(clazz); // now cache is free of this clazz
         }
+        if(evictClasses.isEmpty()) // common case
+            return;
+
+        // some cache entries are for these classes; evict them, in one pass.
+        Iterator<Map.Entry<TypeAndTags, Supplier>> iter = cache.entrySet().iterator();
+        while(iter.hasNext()) // note: no one else is updating cache concurrently
+        {
+            Map.Entry<TypeAndTags, Supplier> entry = iter.next();
+            if(evictClasses.contains(entry.getKey().type.getTheClass()))
+                iter.remove();
+        }
+        cachedClasses.removeAll(evictClasses); // now cache is free of these classes
     }
 
 }
\ No newline at end of file
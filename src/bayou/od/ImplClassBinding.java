@@ -1,9 +1,9 @@
 package bayou.od;
 
 import bayou.jtype.ClassType;
+import bayou.jtype.DiamondTemplate;
 import bayou.jtype.TypeMath;
 
-import java.lang.reflect.Constructor;
 import java.util.Collections;
 import java.util.Set;
 import bayou.od.OD.Predicate;
@@ -62,7 +62,7 @@ class ImplClassBinding
             throw new IllegalArgumentException(String.format("%s is not subclass of %s", implClassB, classA));
         TypeArgConstructor tac = TypeArgConstructor.of(implClassB); // throws
         // B<V1..Vm>
-        ClassType<?> declB = ClassType.withTypeVars(implClassB);
+        ClassType<?> declB = tac.decl;
 
         if( ! typeT.isRawType() ) // bind to single type T
             return bindSingle(typeT, tagMatcher, implClassB, tac, declB);
@@ -93,6 +93,7 @@ class ImplClassBinding
         final Class classB;
         final Predicate<Object[]> tagMatcher;
         final TypeArgConstructor tac;
+        final DiamondTemplate template; // the inference problem, prepared at bind time
 
         ViaInference(Class classA, Class classB, Predicate<Object[]> tagMatcher, TypeArgConstructor tac)
         {
@@ -100,6 +101,7 @@ class ImplClassBinding
             this.classB = classB;
             this.tagMatcher = tagMatcher;
             this.tac = tac;
+            this.template = DiamondTemplate.of(classA, classB);
         }
 
         public String toString()
@@ -115,18 +117,15 @@ class ImplClassBinding
             if(!tagMatcher.test(tags))
                 return null;
 
-            ClassType<?> B_v1_vm;
-            try
-            {   B_v1_vm = TypeMath.diamondInfer(typeQ, classB); }
-            catch (Exception error) // inference fails
-            {   return null; }
+            ClassType<?> B_v1_vm = template.tryInfer(typeQ);
+            if(B_v1_vm==null) // inference fails
+                return null;
 
             Object[] a1_ak = tac.getConstructorArgs(B_v1_vm);
             if(a1_ak==null) // mismatch Ai and vj
                 return null;
 
-            Constructor<T> cons = OD.cast(tac.constructor);
-            return new ConstructorSupplier<T>(cons, a1_ak);
+            return tac.supplier(a1_ak); // the result is cached by OD
         }
 
         public Set<? extends Class> getApplicableClasses()
@@ -146,16 +145,14 @@ class ImplClassBinding
             if(!TypeMath.isSubType(declB, typeT))
                 throw new IllegalArgumentException(String.format("%s is not subtype of %s", declB, typeT));
 
-            Constructor<T> cons = OD.cast(tac.constructor);
-            return new ConstructorBinding<T>(typeT, tagMatcher, cons, new Object[0]);
+            return new ConstructorBinding<T>(typeT, tagMatcher, tac, tac.getConstructorArgs(declB)); // dependencies, if any
         }
 
         // m>0, infer V1..Vm by T :> B<V1..Vm>
         ClassType<?> B_v1_vm = TypeMath.diamondInfer(typeT, implClassB); // throws. wrap message?
         Object[] a1_ak = tac.getConstructorArgs(B_v1_vm);
         if(a1_ak==null) // mismatch Ai and vj
-            throw new IllegalArgumentException(String.format("the type-arg constructor %s doesn't match type %s", tac.constructor, B_v1_vm));
-        Constructor<T> cons = OD.cast(tac.constructor);
-        return new ConstructorBinding<T>(typeT, tagMatcher, cons, a1_ak);
+            throw new IllegalArgumentException(String.format("the type-arg constructor %s doesn't match type %s", tac, B_v1_vm));
+        return new ConstructorBinding<T>(typeT, tagMatcher, tac, a1_ak);
     }
 }
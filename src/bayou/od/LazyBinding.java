@@ -0,0 +1,160 @@
+package bayou.od;
+
+import bayou.jtype.ClassType;
+
+import java.lang.reflect.*;
+import java.util.Set;
+import bayou.od.OD.Binding;
+import bayou.od.OD.Supplier;
+
+// a binding for interface `type` that supplies proxies; see BindingBuilder.lazily()
+//
+// each proxy invokes the supplier of the actual binding upon its first method call,
+// and forwards all method calls to that target.
+// equals() and hashCode() are by identity of the proxy; they don't create the target.
+// toString() doesn't create the target either; once it's created, toString() is forwarded to it.
+//
+// java.lang.reflect.Proxy is used; the proxy class is created once, in the constructor, by newProxyInstance().
+// its constructor is then invoked directly, if we can access it.
+class LazyBinding implements Binding
+{
+    final ClassType<?> type;
+    final Binding binding; // the actual binding
+    final ClassLoader loader;
+    final Class<?>[] interfaces;
+    final Constructor<?> proxyConstructor; // null if not accessible; see newProxy()
+
+    LazyBinding(ClassType<?> type, Binding binding) throws IllegalArgumentException
+    {
+        Class<?> iface = type.getTheClass();
+        if(!iface.isInterface())
+            throw new IllegalArgumentException("lazy binding requires an interface type: "+iface);
+
+        this.type = type;
+        this.binding = binding;
+        this.loader = iface.getClassLoader();
+        this.interfaces = new Class<?>[]{iface};
+        Object proxy = Proxy.newProxyInstance(loader, interfaces, new Handler(null));
+        this.proxyConstructor = accessibleConstructor(proxy.getClass());
+    }
+
+    // null if it can't be accessed, e.g. on Java 16+, a proxy class in a dynamic module
+    static Constructor<?> accessibleConstructor(Class<?> proxyClass)
+    {
+        try
+        {
+            Constructor<?> constructor = proxyClass.getConstructor(InvocationHandler.class);
+            constructor.setAccessible(true); // proxy class of a non-public interface is not public
+            return constructor;
+        }
+        catch (Exception e) // NoSuchMethodException, or InaccessibleObjectException on Java 9+
+        {
+            return null;
+        }
+    }
+
+    Object newProxy(InvocationHandler handler)
+    {
+        if(proxyConstructor==null)
+            return Proxy.newProxyInstance(loader, interfaces, handler);
+        return ConstructorSupplier.newInstance(proxyConstructor, new Object[]{handler});
+    }
+
+    public String toString()
+    {
+        return String.format("LazyBinding(binding=%s)", binding);
+    }
+
+    public <T> Supplier<? extends T> map(ClassType<T> type, Object... tags)
+    {
+        Supplier<? extends T> target = binding.map(type, tags);
+        if(target==null)
+            return null;
+        return new ProxySupplier<T>(this, target);
+    }
+
+    public Set<? extends Class> getApplicableClasses()
+    {
+        return binding.getApplicableClasses();
+    }
+
+    static class ProxySupplier<T> implements Supplier<T>
+    {
+        final LazyBinding lazy;
+        final Supplier<? extends T> target;
+
+        ProxySupplier(LazyBinding lazy, Supplier<? extends T> target)
+        {
+            this.lazy = lazy;
+            this.target = target;
+        }
+
+        public T get()
+        {
+            Object proxy = lazy.newProxy(new Handler(target));
+            return OD.cast(proxy);
+        }
+
+        public String toString()
+        {
+            return "LazyBinding.ProxySupplier(target="+target+")";
+        }
+    }
+
+    static class Handler implements InvocationHandler
+    {
+        Supplier<?> supplier; // null after target is created
+        volatile Object target;
+
+        Handler(Supplier<?> supplier)
+        {
+            this.supplier = supplier;
+        }
+
+        Object target()
+        {
+            Object t = target;
+            if(t!=null)
+                return t;
+            synchronized (this)
+            {
+                t = target;
+                if(t==null)
+                {
+                    t = supplier.get(); // throws. if it does, we'll try again on next call.
+                    if(t==null)
+                        throw new NullPointerException("lazy target is null: "+supplier);
+                    target = t;
+                    supplier = null;
+                }
+                return t;
+            }
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if(method.getDeclaringClass()==Object.class)
+            {
+                String name = method.getName();
+                if(name.equals("equals"))
+                    return proxy==args[0];
+                if(name.equals("hashCode"))
+                    return System.identityHashCode(proxy);
+                if(name.equals("toString") && target==null) // not created yet
+                    return "lazy " + proxy.getClass().getInterfaces()[0].getName()
+                        + "@" + Integer.toHexString(System.identityHashCode(proxy));
+            }
+
+            if(!Modifier.isPublic(method.getDeclaringClass().getModifiers()))
+                method.setAccessible(true);
+            try
+            {
+                return method.invoke(target(), args);
+            }
+            catch (InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -2,6 +2,8 @@ package bayou.od;
 
 import java.util.Map.Entry;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import bayou.od.OD.Supplier;
 
 import bayou.jtype.TypeMath;
@@ -11,57 +13,164 @@ class LocalBindings
 {
     static final ThreadLocal<LocalBindings> localBindings_TL = new ThreadLocal<LocalBindings>();
 
-    boolean shared; // if bindingList is shared by another instance
+    // number of threads whose localBindings_TL is not null. if it's 0, lookups don't touch localBindings_TL at all.
+    // note that ThreadLocal.get() on a thread without a thread local map creates one; that is a waste for
+    // a server with lots of (virtual) threads that never bind locally.
+    // a thread changes the count only when its own value changes between null and non-null, e.g. on exit()
+    // of a wrapped task; so the count drops back to 0 once no thread holds local bindings.
+    // if a thread dies with local bindings, it's never decremented; clear them by OD.Local.setBindings(null).
+    static final AtomicInteger threadsBound = new AtomicInteger(0);
+
+    // another source of local bindings, consulted if there's none in localBindings_TL.
+    // installed by bayou.od.ScopedLocal (module od-jdk21), which carries frozen bindings in a ScopedValue.
+    // not volatile: a thread can only be in a scope after ScopedLocal is initialized (happens-before).
+    static Carrier carrier = null;
+
+    interface Carrier
+    {
+        LocalBindings current(); // return a frozen instance, or null
+    }
+
+    // a frozen instance never changes, except that its cache is populated by lookups.
+    // it can be shared by any number of threads, e.g. by getSnapshot() in one thread and setAll() in others;
+    // they all benefit from the same warm cache.
+    // to add bindings to a frozen instance, a thread works on an unfrozen copy instead.
+    final boolean frozen;
+
+    boolean shared; // if bindingList/cache is shared by another instance
     int version;
 
     BindingList bindingList;
-    HashMap<TypeAndTags, Supplier> cache;
-    HashSet<Class> cachedClasses; // classes covered by cache
+    ConcurrentHashMap<TypeAndTags, Supplier> cache; // concurrent: it may be shared with other threads
+    HashSet<Class> cachedClasses; // classes covered by cache. maintained only if !shared
+
+    LocalBindings frozenCopy; // a frozen copy of this instance; valid while `shared`
 
     LocalBindings()
     {
+        frozen = false;
         shared = false;
         version = 0;
         bindingList = new BindingList();
-        cache = new HashMap<TypeAndTags, Supplier>();
+        cache = new ConcurrentHashMap<TypeAndTags, Supplier>();
         cachedClasses = new HashSet<Class>();
     }
-    private LocalBindings(LocalBindings that) // copy constructor, for backup/restore
+    private LocalBindings(LocalBindings that, boolean frozen) // copy constructor, to freeze or to thaw
     {
         // don't do actual copying here; share.
-        that.shared=true;
+        if(!that.frozen)
+            that.shared=true;
 
+        this.frozen = frozen;
         shared =true;
         version = that.version;
         bindingList = that.bindingList;
         cache = that.cache;
-        cachedClasses = that.cachedClasses;
+        cachedClasses = null; // rebuilt when we stop sharing
+
+        if(!frozen) // thaw. `that` is frozen, it is our frozen copy, until we change.
+            frozenCopy = that;
+    }
+
+    LocalBindings thaw()
+    {
+        assert frozen;
+        return new LocalBindings(this, false);
     }
 
+    LocalBindings freeze()
+    {
+        if(frozen)
+            return this;
+        if(frozenCopy==null)
+            frozenCopy = new LocalBindings(this, true);
+        return frozenCopy;
+    }
 
     void add0(Binding binding)
     {
+        assert !frozen;
+
         if(shared) // must make private copy before mutation
         {
             bindingList = new BindingList(bindingList);
-            cache = new HashMap<TypeAndTags, Supplier>(cache);
-            cachedClasses = new HashSet<Class>(cachedClasses);
+            cache = new ConcurrentHashMap<TypeAndTags, Supplier>(cache);
+            // entries could have been added by other threads sharing the cache
+            cachedClasses = new HashSet<Class>();
+            for(TypeAndTags tnt : cache.keySet())
+                cachedClasses.add(tnt.type.getTheClass());
 
             shared = false;
+            frozenCopy = null;
         }
 
+        Set<? extends Class> appClasses = binding.getApplicableClasses();
+        BindingList.ClassFilter filter = BindingList.classFilter(binding, appClasses);
+        bindingList.testFilter(filter); // alien code. no lock is held here
         version++;
-        bindingList.add(binding);
-        fixCache(binding);
+        bindingList.add(binding, appClasses, filter);
+        fixCache(appClasses, filter);
     }
 
     // -------------------------------------------------------------------
 
+    // local bindings of the current thread. return null if none.
+    static LocalBindings current()
+    {
+        LocalBindings lb = threadLocal();
+        if(lb==null)
+        {
+            Carrier c = carrier;
+            if(c!=null)
+                lb = c.current();
+        }
+        return lb;
+    }
+
+    static void setCurrent(LocalBindings lb)
+    {
+        // null in TL would expose the carried bindings, if any; use EMPTY to hide them
+        if(lb==null && carrier!=null && carrier.current()!=null)
+            lb = EMPTY;
+
+        setThreadLocal(lb);
+    }
+
+    // the value of localBindings_TL; without touching it if no thread has a value.
+    // if the current thread has a value, the count is not 0 (it's incremented by this thread).
+    static LocalBindings threadLocal()
+    {
+        return (threadsBound.get()==0)? null : localBindings_TL.get();
+    }
+
+    // set localBindings_TL, and maintain threadsBound. nothing is done if the value doesn't change.
+    static void setThreadLocal(LocalBindings lb)
+    {
+        LocalBindings prev = threadLocal();
+        if(lb==prev)
+            return;
+        if(lb==null)
+        {
+            localBindings_TL.remove();
+            threadsBound.decrementAndGet();
+        }
+        else
+        {
+            localBindings_TL.set(lb);
+            if(prev==null)
+                threadsBound.incrementAndGet();
+        }
+    }
+
+    static final LocalBindings EMPTY = new LocalBindings().freeze();
+
     static void addLocal(Binding binding)
     {
-        LocalBindings lb = localBindings_TL.get();
+        LocalBindings lb = current();
         if(lb==null)
-            localBindings_TL.set( lb = new LocalBindings() );
+            setCurrent( lb = new LocalBindings() );
+        else if(lb.frozen)
+            setCurrent( lb = lb.thaw() );
 
         lb.add0(binding);
     }
@@ -78,16 +187,20 @@ class LocalBindings
 
     static <T> Supplier<T> getSupplier(TypeAndTags<T> tnt)
     {
-        LocalBindings lb = localBindings_TL.get();
+        LocalBindings lb = current();
         if(lb==null)
             return null;
 
         Supplier supplier = lb.cache.get(tnt);
         if(supplier ==null)
         {
+            if(lb.bindingList.allBindings.size==0) // e.g. EMPTY. don't fill the cache with NO_SUPPLIER
+                return null;
+
             Class clazz = tnt.type.getTheClass();
 
             int version0 = lb.version;
+            lb.bindingList.testFilters(clazz); // alien code
             List<Binding> bindings = lb.bindingList.forClass(clazz); // this list is constant
 
             supplier = OD.findSupplier(bindings, tnt.type, tnt.tags); // alien code! //throws
@@ -100,7 +213,8 @@ class LocalBindings
             if(lb.version==version0)
             {
                 lb.cache.put(tnt, supplier);
-                lb.cachedClasses.add(clazz);
+                if(!lb.shared)
+                    lb.cachedClasses.add(clazz);
             }
             // actually, `lb` could have been kicked out of `localBindings_TL`; the current LocalBindings
             // could be another instance or null. no need to check for that case, which should be very rare.
@@ -109,6 +223,7 @@ class LocalBindings
             // note: cache can be shared too, updates to lb1.cache can be visible in lb2.cache.
             // this is ok as long as they share the same bindingList.
             // when they no longer share bindingList, they'll have separate caches as well.
+            // a shared cache may be updated by other threads; `cachedClasses` is rebuilt when we stop sharing.
         }
 
         if(supplier == NO_SUPPLIER) // unmask null
@@ -118,7 +233,8 @@ class LocalBindings
 
     // the new binding may invalidate some cache entries.
     // that should be rare; we try to preserve cache entries.
-    void fixCache(Binding newBinding)
+    // appClasses, filter: of the new binding
+    void fixCache(Set<? extends Class> appClasses, BindingList.ClassFilter filter)
     {
         if(cache.isEmpty()) // common during initial local bindings
             return;
@@ -126,7 +242,22 @@ class LocalBindings
         // a cache entry may become invalid, if type.class is applicable in the new binding.
         // we don't do more complicated stuff, e.g. test newBinding.getSupplier(tnt)
 
-        Set<? extends Class> appClasses = newBinding.getApplicableClasses();
+        if(filter!=null) // evict classes accepted by the filter
+        {
+            Iterator<Entry<TypeAndTags, Supplier>> iter = cache.entrySet().iterator();
+            while(iter.hasNext())
+            {
+                Class clazz = iter.next().getKey().type.getTheClass();
+                filter.test(clazz); // alien code; memoized
+                if(filter.accepts(clazz))
+                {
+                    iter.remove();
+                    cachedClasses.remove(clazz);
+                }
+            }
+            return;
+        }
+
         if(appClasses==null) // this should be very rare. don't return null!
         {
             // no idea what classes this new binding may affect. clear all.
@@ -162,19 +293,15 @@ class LocalBindings
     //     restore snapshot
     static List<Binding> getSnapshot()
     {
-        LocalBindings lb = localBindings_TL.get();
+        LocalBindings lb = current();
         if(lb==null)
             return Collections.emptyList();
         else
-            return new LocalBindings(lb).asList(); // a snapshot
-
-        // although no actual copying is done here, it's very likely that `lb` immediately
-        // gets new bindings; that's the motive for saving snapshot in the 1st place.
-        // therefore very likely `lb` will trigger copying immediately.
+            return lb.freeze().asList(); // a snapshot
 
-        // so it's not very cheap; we could do further optimizations,
-        // e.g. multiple BindingList can share internal data, if only one of them mutates.
-        // cache copying can be delayed until it is to be updated.
+        // no actual copying is done here, and repeated calls return the same frozen copy.
+        // however it's very likely that `lb` immediately gets new bindings; that's the motive for
+        // saving snapshot in the 1st place. therefore very likely `lb` will trigger copying immediately.
         // for now, we think save-restore happens infrequently, so it's acceptable.
     }
 
@@ -188,10 +315,9 @@ class LocalBindings
         else if(bindings instanceof ListWrapper)
         {
             // restore a prev snapshot of LocalBinding; client got it from getSnapshot().
-            lb = new LocalBindings( ((ListWrapper)bindings).unwrap() );
-            // no actual copying here.
-            // in typical usage it's rare that `lb` will mutate after calling this method.
-            // our complexity of `shared` strategy pays off here. is it worth it?
+            lb = ((ListWrapper)bindings).unwrap();
+            // it's frozen; install it as is, with its warm cache. no copying, no allocation.
+            // in typical usage it's rare that `lb` will be thawed after calling this method.
         }
         else // client does sophisticated manipulations of local binding list.
         {
@@ -201,11 +327,128 @@ class LocalBindings
                 lb.bindingList.add(binding);
         }
 
-        localBindings_TL.set(lb);
-        // lb can be null, in which case we could do localBindings_TL.remove();
-        // set(null) is fine tho.
+        setCurrent(lb);
+    }
+
+
+    // capture the local bindings of the current thread, to be installed in another thread later.
+    // return a frozen instance, or null if there's none
+    static LocalBindings capture()
+    {
+        LocalBindings lb = current();
+        return (lb==null)? null : lb.freeze(); // cheap; the same frozen copy is reused until lb changes.
+    }
+
+    // install the captured bindings in the current thread; return the previous ones, to be restored by exit()
+    static LocalBindings enter(LocalBindings captured)
+    {
+        LocalBindings prev = threadLocal();
+        if(captured!=prev)
+            setCurrent(captured);
+        return prev;
+    }
+    static void exit(LocalBindings prev)
+    {
+        setThreadLocal(prev); // nothing is done if the task left it as is, e.g. null.
+    }
+
+    static class WrappedRunnable implements Runnable
+    {
+        final LocalBindings captured;
+        final Runnable task;
+        WrappedRunnable(LocalBindings captured, Runnable task)
+        {
+            this.captured = captured;
+            this.task = task;
+        }
+        public void run()
+        {
+            LocalBindings prev = enter(captured);
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                exit(prev);
+            }
+        }
+        public String toString()
+        {
+            return "OD.Local.wrap("+task+")";
+        }
+    }
+
+    static class WrappedCallable<V> implements Callable<V>
+    {
+        final LocalBindings captured;
+        final Callable<V> task;
+        WrappedCallable(LocalBindings captured, Callable<V> task)
+        {
+            this.captured = captured;
+            this.task = task;
+        }
+        public V call() throws Exception
+        {
+            LocalBindings prev = enter(captured);
+            try
+            {
+                return task.call();
+            }
+            finally
+            {
+                exit(prev);
+            }
+        }
+        public String toString()
+        {
+            return "OD.Local.wrap("+task+")";
+        }
+    }
+
+    static class WrappedExecutor implements Executor
+    {
+        final Executor executor;
+        WrappedExecutor(Executor executor)
+        {
+            this.executor = executor;
+        }
+        public void execute(Runnable command)
+        {
+            executor.execute(new WrappedRunnable(capture(), command)); // captured in the submitting thread
+        }
+        public String toString()
+        {
+            return "OD.Local.wrap("+executor+")";
+        }
     }
 
+    // submit()/invokeAll() etc. of AbstractExecutorService all go through execute()
+    static class WrappedExecutorService extends AbstractExecutorService
+    {
+        final ExecutorService executor;
+        WrappedExecutorService(ExecutorService executor)
+        {
+            this.executor = executor;
+        }
+        public void execute(Runnable command)
+        {
+            executor.execute(new WrappedRunnable(capture(), command)); // captured in the submitting thread
+        }
+
+        public void shutdown(){ executor.shutdown(); }
+        public List<Runnable> shutdownNow(){ return executor.shutdownNow(); }
+        public boolean isShutdown(){ return executor.isShutdown(); }
+        public boolean isTerminated(){ return executor.isTerminated(); }
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+        {
+            return executor.awaitTermination(timeout, unit);
+        }
+        public String toString()
+        {
+            return "OD.Local.wrap("+executor+")";
+        }
+    }
 
     List<Binding> asList(){ return new ListWrapper(); }
     class ListWrapper extends AbstractList<Binding>
@@ -4,6 +4,11 @@ import bayou.jtype.ClassType;
 import bayou.jtype.TypeMath;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import _bayou._tmp._StripedCounter;
 
 /**
  * A Service Locator library.
@@ -111,6 +116,9 @@ public class OD
     {
         if(tags==null) throw new IllegalArgumentException("tags==null");
 
+        if(WarmUp.active) // rarely
+            WarmUp.beforeGet(type, tags);
+
         Supplier<T> supplier = getSupplier(type, tags); // throws
         if(supplier==null)
             throw new NotFoundException(type, tags);
@@ -153,7 +161,7 @@ public class OD
         List<Binding> globalList = GlobalBindings.snapshot(clazz);
         findSuppliers(suppliers, globalList, type, tags);
 
-        LocalBindings lb = LocalBindings.localBindings_TL.get();
+        LocalBindings lb = LocalBindings.current();
         if(lb!=null)
             findSuppliers(suppliers, lb.bindingList.forClass(clazz), type, tags);
 
@@ -232,6 +240,7 @@ public class OD
          * <p>
          *     Return `null` to represent the set of all classes,
          *     if it's difficult or impossible to enumerate applicable classes.
+         *     In that case, consider implementing {@link FilteredBinding} instead.
          * </p>
          * <p>
          *     This information is used for internal optimization;
@@ -246,6 +255,91 @@ public class OD
 
     }
 
+    /**
+     * A Binding that may apply to classes accepted by a filter.
+     * <p>
+     *     A binding whose {@link #getApplicableClasses()} returns `null` is consulted for lookups of every class,
+     *     and adding it invalidates all cached lookups.
+     *     If the applicable classes cannot be enumerated, but can be tested, for example,
+     *     all subtypes of `Service`, or all classes in package `com.example.dao`,
+     *     the binding can implement this interface, and return `null` from {@link #getApplicableClasses()}.
+     *     It is then only consulted for lookups of classes accepted by the filter,
+     *     and adding it only invalidates cached lookups of these classes.
+     * </p>
+     * <p>
+     *     See {@link OD#subTypesOf(Class)} and {@link OD#inPackage(String)} for common filters.
+     * </p>
+     */
+    public interface FilteredBinding extends Binding
+    {
+        /**
+         * Get the filter of classes this Binding may apply to.
+         * <p>
+         *     If this binding applies to a (type,tags),
+         *     the filter must accept {@link ClassType#getTheClass() the class of the type}.
+         *     Return `null` to accept all classes.
+         * </p>
+         * <p>
+         *     This method is invoked once when the binding is added.
+         *     The filter is usually evaluated once per class; it must be cheap, thread-safe and consistent.
+         *     It is never evaluated while OD holds internal locks.
+         * </p>
+         * <p>
+         *     This method is only consulted if {@link #getApplicableClasses()} returns `null`.
+         * </p>
+         */
+        Predicate<Class> getApplicableClassFilter();
+    }
+
+    /**
+     * A class filter that accepts `superType` and its subtypes.
+     * <p>
+     *     See {@link FilteredBinding#getApplicableClassFilter()}.
+     * </p>
+     */
+    static public Predicate<Class> subTypesOf(final Class<?> superType)
+    {
+        if(superType==null) throw new IllegalArgumentException("superType==null");
+        return new Predicate<Class>()
+        {
+            public boolean test(Class clazz)
+            {
+                return superType.isAssignableFrom(clazz);
+            }
+            public String toString()
+            {
+                return "OD.subTypesOf("+superType.getName()+")";
+            }
+        };
+    }
+
+    /**
+     * A class filter that accepts classes in the package, or in its subpackages.
+     * <p>
+     *     For example, <code>inPackage("com.example.dao")</code> accepts
+     *     <code>com.example.dao.UserDao</code> and <code>com.example.dao.impl.UserDaoImpl</code>.
+     * </p>
+     * <p>
+     *     See {@link FilteredBinding#getApplicableClassFilter()}.
+     * </p>
+     */
+    static public Predicate<Class> inPackage(String packageName)
+    {
+        if(packageName==null) throw new IllegalArgumentException("packageName==null");
+        final String prefix = packageName.endsWith(".")? packageName : packageName+".";
+        return new Predicate<Class>()
+        {
+            public boolean test(Class clazz)
+            {
+                return clazz.getName().startsWith(prefix);
+            }
+            public String toString()
+            {
+                return "OD.inPackage("+prefix.substring(0, prefix.length()-1)+")";
+            }
+        };
+    }
+
     // Global bindings
 
     /**
@@ -278,14 +372,173 @@ public class OD
      * @see #bind(Class)
      * @see bayou.jtype.ClassType
      */
-    static public <T> BindingBuilder<T> bind(ClassType<T> type){ return new BindingBuilder<T>(false, type); }
+    static public <T> BindingBuilder<T> bind(ClassType<T> type){ return new BindingBuilder<T>(GLOBAL, type); }
 
     /**
      * Add the binding to the global binding list.
      */
     static public void bind(Binding binding) { GlobalBindings.addGlobal(binding); }
 
-    // no way to remove global bindings.
+    /**
+     * Add the bindings to the global binding list, as one update.
+     * <p>
+     *     This method is equivalent to calling {@link #bind(OD.Binding)} for each binding in order,
+     *     but it's cheaper for a large number of bindings.
+     * </p>
+     * <p>
+     *     See also {@link #batch()}.
+     * </p>
+     */
+    static public void bindAll(Collection<? extends Binding> bindings)
+    {
+        if(bindings==null) throw new IllegalArgumentException("bindings==null");
+        ArrayList<Binding> list = new ArrayList<Binding>(bindings); // defensive
+        for(Binding binding : list)
+            if(binding==null) throw new IllegalArgumentException("bindings contains null");
+
+        GlobalBindings.addGlobalAll(list);
+    }
+
+    /**
+     * Start a batch of global bindings.
+     * <p>
+     *     Bindings are collected in the batch, and added to the global binding list
+     *     when the batch is {@link BindingBatch#commit() committed}. For example
+     * </p>
+     * <pre>
+     *     OD.BindingBatch batch = OD.batch();
+     *     batch.bind(Foo.class).to(FooImpl.class);
+     *     batch.bind(Bar.class).tags("x").to(bar);
+     *     ...
+     *     batch.commit();
+     * </pre>
+     */
+    static public BindingBatch batch(){ return new BindingBatch(); }
+
+    /**
+     * To create a binding, without adding it to any binding list.
+     * <p>
+     *     This method is equivalent to {@link #binding(ClassType)}
+     *     by wrapping the `Class` as `ClassType`; see {@link ClassType#of(Class)}.
+     * </p>
+     */
+    static public <T> BindingBuilder<T> binding(Class<T> clazz){ return binding(ClassType.of(clazz)); }
+
+    /**
+     * To create a binding, without adding it to any binding list.
+     * <p>
+     *     This method return a builder; when the builder finishes, a binding is created and returned,
+     *     to be added later, e.g. by {@link #replace(Binding, Binding)} or {@link #bind(Binding)}. For example
+     * </p>
+     * <pre>
+     *     Binding binding = OD.binding(Foo.class).to(FooImpl.class);
+     * </pre>
+     */
+    static public <T> BindingBuilder<T> binding(ClassType<T> type){ return new BindingBuilder<T>(NONE, type); }
+
+    /**
+     * Seal the global binding list; no more global bindings can be added.
+     * <p>
+     *     Typically an application adds all global bindings during startup, then calls this method.
+     *     After sealing, global lookups no longer need any locking;
+     *     lookups of simple bindings, e.g. <code>bind(Foo.class).tags(x).to(foo)</code>,
+     *     are resolved eagerly by this method, and served by an immutable hash table.
+     * </p>
+     * <p>
+     *     After sealing, any attempt to add global bindings, e.g. by {@link #bind(Binding)},
+     *     fails with `IllegalStateException`. Local bindings are not affected.
+     * </p>
+     * <p>
+     *     This method is idempotent.
+     * </p>
+     */
+    static public void seal(){ GlobalBindings.seal(); }
+
+    /**
+     * Initialize eager bindings, concurrently.
+     * <p>
+     *     This method is equivalent to {@link #warmUp(ExecutorService)}
+     *     with a fixed thread pool of N daemon threads, N being the number of processors.
+     *     The pool is shut down when this method returns.
+     * </p>
+     */
+    static public void warmUp() throws RuntimeException { WarmUp.run(null); }
+
+    /**
+     * Initialize eager bindings, concurrently, by the `executor`.
+     * <p>
+     *     For each (type,tags) of the bindings marked by {@link BindingBuilder#eagerly()},
+     *     `OD.get(type,tags)` is invoked, typically at the end of application startup.
+     *     This method blocks until all of them are done.
+     * </p>
+     * <p>
+     *     Dependencies are discovered on the fly: if creating an eager object looks up another eager object,
+     *     the latter is created first, in the same thread, or waited for if it's being created by another thread.
+     *     Independent objects are created in parallel. Circular dependencies are not supported.
+     * </p>
+     * <p>
+     *     If some lookups fail, the others are still done;
+     *     then the first error, in the order of eager bindings, is thrown.
+     * </p>
+     */
+    static public void warmUp(ExecutorService executor) throws RuntimeException
+    {
+        if(executor==null) throw new IllegalArgumentException("executor==null");
+        WarmUp.run(executor);
+    }
+
+    /**
+     * Remove the binding from the global binding list.
+     * <p>
+     *     `binding` is matched by identity, typically the binding returned by
+     *     {@link BindingBuilder#to(Object) BindingBuilder.to(...)}.
+     * </p>
+     * <p>
+     *     Only the cached lookups affected by the binding are invalidated.
+     * </p>
+     * @return false if the binding is not in the global binding list
+     * @throws IllegalStateException if global bindings are {@link #seal() sealed}
+     */
+    static public boolean unbind(Binding binding)
+    {
+        if(binding==null) throw new IllegalArgumentException("binding==null");
+        if(!GlobalBindings.replaceGlobal(binding, null))
+            return false;
+        WarmUp.removeEager(binding);
+        return true;
+    }
+
+    /**
+     * Replace a binding in the global binding list, as one update.
+     * <p>
+     *     `newBinding` takes the position of `oldBinding` in the list;
+     *     no lookup sees both bindings, or neither of them.
+     *     `oldBinding` is matched by identity. For example, to switch implementations
+     * </p>
+     * <pre>
+     *     Binding binding = OD.bind(Foo.class).to(FooImpl1.class);
+     *     ...
+     *     OD.replace(binding, OD.binding(Foo.class).to(FooImpl2.class));
+     * </pre>
+     * <p>
+     *     Only the cached lookups affected by `oldBinding` or `newBinding` are invalidated.
+     * </p>
+     * @return false if `oldBinding` is not in the global binding list; `newBinding` is not added either.
+     * @throws IllegalStateException if global bindings are {@link #seal() sealed}
+     */
+    static public boolean replace(Binding oldBinding, Binding newBinding)
+    {
+        if(oldBinding==null) throw new IllegalArgumentException("oldBinding==null");
+        if(newBinding==null) throw new IllegalArgumentException("newBinding==null");
+        if(newBinding instanceof DeferredBinding)
+            ((DeferredBinding)newBinding).prepare(); // throws
+        if(!GlobalBindings.replaceGlobal(oldBinding, newBinding))
+            return false;
+        if(oldBinding!=newBinding)
+            WarmUp.removeEager(oldBinding);
+        return true;
+    }
+
     // get all global bindings?
 
 
@@ -309,6 +562,14 @@ public class OD
      *          // later in the same thread
      *          OD.get(Foo.class)  // sees `foo2`
      * </pre>
+     * <p>
+     *     While no thread has local bindings, lookups pay nothing for local bindings;
+     *     while any thread has some, every lookup in every thread checks a `ThreadLocal`.
+     *     A thread drops its local bindings by <code>setBindings(null)</code>, or when a
+     *     {@link #wrap(Runnable) wrapped} task ends.
+     *     On JDK 21 with <code>--enable-preview</code>, see also `bayou.od.ScopedLocal` in module `od-jdk21`,
+     *     which carries local bindings in a `ScopedValue` instead of a `ThreadLocal`.
+     * </p>
      */
     static public class Local
     {
@@ -337,7 +598,7 @@ public class OD
          * </pre>
          * @see #bind(Class)
          */
-        static public <T> BindingBuilder<T> bind(ClassType<T> type){ return new BindingBuilder<T>(true, type); }
+        static public <T> BindingBuilder<T> bind(ClassType<T> type){ return new BindingBuilder<T>(LOCAL, type); }
 
         /**
          * Add the binding to the local binding list of the current thread.
@@ -371,6 +632,9 @@ public class OD
          * <p>
          *     It is ok to get the binding list from one thread and set it to another thread;
          *     this is useful for migrating a task and its context between threads.
+         *     The returned list is a frozen snapshot that can be shared by any number of threads;
+         *     getting and setting it are cheap, and lookup results are cached in the snapshot
+         *     for all threads that use it.
          * </p>
          */
         static public List<Binding> getBindings() { return LocalBindings.getSnapshot(); }
@@ -388,6 +652,365 @@ public class OD
         static public void setBindings(List<Binding> bindings){ LocalBindings.setAll(bindings); }
         // user can set with any list; allowing sophisticated manipulation of local bindings.
 
+        // context propagation. capture a frozen snapshot now; install it in the worker thread later.
+        // both are O(1); the snapshot, with its warm cache, is shared by all tasks.
+
+        /**
+         * Wrap the task so that it runs with the current local bindings.
+         * <p>
+         *     The local bindings of the current thread are captured when this method is called.
+         *     When the returned Runnable is run, in any thread, the captured bindings are installed
+         *     as the local bindings of that thread during `task.run()`;
+         *     the previous local bindings of that thread are restored afterwards.
+         * </p>
+         * <p>
+         *     This is equivalent to, but cheaper than, doing
+         *     {@link #getBindings()} and {@link #setBindings(List)} by hand in a task wrapper.
+         * </p>
+         */
+        static public Runnable wrap(Runnable task)
+        {
+            if(task==null) throw new IllegalArgumentException("task==null");
+            return new LocalBindings.WrappedRunnable(LocalBindings.capture(), task);
+        }
+
+        /**
+         * Wrap the task so that it runs with the current local bindings.
+         * <p>
+         *     See {@link #wrap(Runnable)}.
+         * </p>
+         */
+        static public <V> Callable<V> wrap(Callable<V> task)
+        {
+            if(task==null) throw new IllegalArgumentException("task==null");
+            return new LocalBindings.WrappedCallable<V>(LocalBindings.capture(), task);
+        }
+
+        /**
+         * Wrap the executor so that tasks run with the local bindings of their submitters.
+         * <p>
+         *     For every task passed to `execute(task)` of the returned Executor,
+         *     the local bindings of the calling thread are captured, as if by {@link #wrap(Runnable)}.
+         *     For example, to propagate local bindings to `CompletableFuture` stages
+         * </p>
+         * <pre>
+         *     Executor executor = OD.Local.wrap(ForkJoinPool.commonPool());
+         *
+         *     CompletableFuture.supplyAsync(()-&gt;OD.get(Foo.class), executor);
+         * </pre>
+         */
+        static public Executor wrap(Executor executor)
+        {
+            if(executor==null) throw new IllegalArgumentException("executor==null");
+            return new LocalBindings.WrappedExecutor(executor);
+        }
+
+        /**
+         * Wrap the executor service so that tasks run with the local bindings of their submitters.
+         * <p>
+         *     For every task submitted to the returned ExecutorService,
+         *     the local bindings of the calling thread are captured, as if by {@link #wrap(Runnable)}.
+         *     Lifecycle methods, e.g. `shutdown()`, are forwarded to `executorService`.
+         * </p>
+         */
+        static public ExecutorService wrap(ExecutorService executorService)
+        {
+            if(executorService==null) throw new IllegalArgumentException("executorService==null");
+            return new LocalBindings.WrappedExecutorService(executorService);
+        }
+
+    }
+
+    // where a finished binding goes. see BindingBuilder.finish()
+    static abstract class BindingTarget
+    {
+        abstract void add(Binding binding);
+
+        // whether bindings that are expensive to create should be created later. see BindingBatch
+        boolean deferred(){ return false; }
+
+        // whether bindings are meant for the global binding list, e.g. through a batch. see eagerly()
+        boolean global(){ return false; }
+    }
+    static final BindingTarget GLOBAL = new BindingTarget()
+    {
+        public void add(Binding binding){ GlobalBindings.addGlobal(binding); }
+        boolean global(){ return true; }
+    };
+    static final BindingTarget LOCAL = new BindingTarget()
+    {
+        public void add(Binding binding){ LocalBindings.addLocal(binding); }
+    };
+    static final BindingTarget NONE = new BindingTarget() // see OD.binding()
+    {
+        public void add(Binding binding){ }
+        boolean global(){ return true; } // e.g. for OD.replace()
+    };
+
+    /**
+     * A batch of global bindings.
+     * <p>
+     *     A BindingBatch is started by {@link OD#batch()}. Bindings are collected in the batch by
+     *     `bind()` methods, then added to the global binding list by {@link #commit()}.
+     * </p>
+     * <p>
+     *     This is intended for applications that have a large number of bindings at startup.
+     *     Bindings to classes, e.g. {@link BindingBuilder#to(Class)}, require reflection
+     *     and validation; in a batch, they are prepared in parallel upon commit.
+     *     All bindings of the batch are then added to the global binding list in one update.
+     * </p>
+     * <p>
+     *     A BindingBatch is not thread-safe.
+     * </p>
+     */
+    static public final class BindingBatch
+    {
+        final ArrayList<Binding> bindings = new ArrayList<Binding>();
+        boolean committed;
+
+        BindingBatch(){}
+
+        final BindingTarget target = new BindingTarget()
+        {
+            void add(Binding binding){ add0(binding); }
+            boolean deferred(){ return true; }
+            boolean global(){ return true; }
+        };
+
+        void add0(Binding binding)
+        {
+            if(committed) throw new IllegalStateException("batch is already committed");
+            if(GlobalBindings.sealed!=null) throw new IllegalStateException("global bindings are sealed"); // fail early
+            bindings.add(binding);
+        }
+
+        /**
+         * To add a binding to this batch.
+         * <p>
+         *     This method is equivalent to {@link #bind(ClassType)}
+         *     by wrapping the `Class` as `ClassType`; see {@link ClassType#of(Class)}.
+         * </p>
+         */
+        public <T> BindingBuilder<T> bind(Class<T> clazz){ return bind(ClassType.of(clazz)); }
+
+        /**
+         * To add a binding to this batch.
+         * <p>
+         *     This method return a builder; when the builder finishes,
+         *     a binding is created and added to this batch.
+         *     If the binding requires reflection, e.g. {@link BindingBuilder#to(Class)},
+         *     the returned Binding is not usable until the batch is committed.
+         * </p>
+         */
+        public <T> BindingBuilder<T> bind(ClassType<T> type){ return new BindingBuilder<T>(target, type); }
+
+        /**
+         * Add the binding to this batch.
+         * @return `this` for method chaining
+         */
+        public BindingBatch bind(Binding binding)
+        {
+            if(binding==null) throw new IllegalArgumentException("binding==null");
+            add0(binding);
+            return this;
+        }
+
+        /**
+         * Prepare all bindings of this batch, and add them to the global binding list.
+         * <p>
+         *     Bindings are prepared in parallel if there are many of them.
+         *     If any binding fails, e.g. `to(implClass)` with an invalid `implClass`, its exception is thrown,
+         *     and none of the bindings in this batch is added.
+         * </p>
+         * <p>
+         *     If successful, all bindings are added to the global binding list in one update,
+         *     in the order they were added to this batch; see {@link OD#bindAll(Collection)}.
+         * </p>
+         * @return the bindings added
+         */
+        public List<Binding> commit() throws RuntimeException
+        {
+            if(committed) throw new IllegalStateException("batch is already committed");
+            if(GlobalBindings.sealed!=null) throw new IllegalStateException("global bindings are sealed"); // fail early
+
+            ArrayList<DeferredBinding> deferred = new ArrayList<DeferredBinding>();
+            for(Binding binding : bindings)
+                if(binding instanceof DeferredBinding)
+                    deferred.add((DeferredBinding)binding);
+            DeferredBinding.prepareAll(deferred); // throws
+
+            GlobalBindings.addGlobalAll(bindings);
+            committed = true;
+            return Collections.unmodifiableList(bindings);
+        }
+    }
+
+    /**
+     * A bounded pool of reusable objects.
+     * <p>
+     *     A Pool is created by {@link BindingBuilder#pooled(int, Supplier, Predicate)},
+     *     which also binds the type to {@link #lease()}. For example
+     * </p>
+     * <pre>
+     *     static final OD.Pool&lt;Deflater&gt; deflaters = OD.bind(Deflater.class)
+     *         .pooled(64, Deflater::new, d-&gt;{ d.reset(); return true; });
+     *     ...
+     *     Deflater deflater = OD.get(Deflater.class);  // leased from the pool
+     *     try
+     *     {
+     *         ...
+     *     }
+     *     finally
+     *     {
+     *         deflaters.release(deflater);
+     *     }
+     * </pre>
+     * <p>
+     *     `lease()` and `release()` are lock-free. Idle objects are kept in a fixed number of slots;
+     *     threads start probing at different slots, so they rarely contend on the same slot.
+     *     If there's no idle object, a new one is created by the factory;
+     *     if there's no free slot upon release, the object is discarded.
+     * </p>
+     */
+    static public final class Pool<T> implements Supplier<T>
+    {
+        final Supplier<? extends T> factory;
+        final Predicate<? super T> reset; // nullable
+        final AtomicReferenceArray<T> slots;
+        // statistics. striped; they are updated on every lease, by all threads, but rarely read.
+        final _StripedCounter leaseCount = new _StripedCounter();
+        final _StripedCounter createCount = new _StripedCounter();
+        final _StripedCounter discardCount = new _StripedCounter();
+        Binding binding; // set by the builder
+
+        Pool(int maxSize, Supplier<? extends T> factory, Predicate<? super T> reset)
+        {
+            this.factory = factory;
+            this.reset = reset;
+            this.slots = new AtomicReferenceArray<T>(maxSize);
+        }
+
+        // different threads start at different slots
+        int start()
+        {
+            long id = Thread.currentThread().getId();
+            return (int)((id * 0x9E3779B97F4A7C15L) >>> 33) % slots.length();
+        }
+
+        /**
+         * Lease an object from the pool.
+         * <p>
+         *     Return an idle object if there is one; otherwise create a new one by the factory.
+         * </p>
+         */
+        public T lease()
+        {
+            leaseCount.increment();
+            int N = slots.length();
+            int start = start();
+            for(int x=0; x<N; x++)
+            {
+                int i = (start+x) % N;
+                if(slots.get(i)==null) // read first; don't write to an empty slot
+                    continue;
+                T obj = slots.getAndSet(i, null);
+                if(obj!=null)
+                    return obj;
+            }
+            createCount.increment();
+            return factory.get();
+        }
+
+        /**
+         * Same as {@link #lease()}.
+         */
+        public T get()
+        {
+            return lease();
+        }
+
+        /**
+         * Return an object to the pool.
+         * <p>
+         *     The object is reset by the `reset` predicate; if the predicate returns false,
+         *     or if the pool is full, the object is discarded.
+         * </p>
+         */
+        public void release(T obj)
+        {
+            if(obj==null) throw new IllegalArgumentException("obj==null");
+
+            if(reset!=null && !reset.test(obj))
+            {
+                discardCount.increment();
+                return;
+            }
+            int N = slots.length();
+            int start = start();
+            for(int x=0; x<N; x++)
+            {
+                int i = (start+x) % N;
+                if(slots.get(i)==null && slots.compareAndSet(i, null, obj))
+                    return;
+            }
+            discardCount.increment(); // full
+        }
+
+        /**
+         * The binding of this pool, e.g. for {@link OD#unbind(Binding)}.
+         */
+        public Binding getBinding()
+        {
+            return binding;
+        }
+
+        /**
+         * Number of leases so far.
+         */
+        public long getLeaseCount(){ return leaseCount.get(); }
+
+        /**
+         * Number of leases so far that were served by idle objects.
+         */
+        public long getHitCount()
+        {
+            long creates = createCount.get(); // read first; a lease is counted before its create
+            return Math.max(0, leaseCount.get() - creates);
+        }
+
+        /**
+         * Ratio of hits to leases; 0 if there is no lease yet.
+         */
+        public double getHitRate()
+        {
+            long creates = createCount.get();
+            long leases = leaseCount.get();
+            return leases==0? 0 : (double)Math.max(0, leases - creates) / leases;
+        }
+
+        /**
+         * Number of released objects that were discarded, because the pool was full,
+         * or the `reset` predicate returned false.
+         */
+        public long getDiscardCount(){ return discardCount.get(); }
+
+        /**
+         * Number of idle objects currently in the pool.
+         */
+        public int getIdleCount()
+        {
+            int n = 0;
+            for(int i=0; i<slots.length(); i++)
+                if(slots.get(i)!=null)
+                    n++;
+            return n;
+        }
+
+        public String toString()
+        {
+            return String.format("OD.Pool(maxSize=%d, idle=%d, leases=%d, hitRate=%.3f, discards=%d, factory=%s)",
+                slots.length(), getIdleCount(), getLeaseCount(), getHitRate(), getDiscardCount(), factory);
+        }
     }
 
     static final Predicate<Object[]> NO_TAG = new Predicate<Object[]>()
@@ -410,7 +1033,7 @@ public class OD
      * Builder for creating bindings.
      * <p>
      *     A BindingBuilder is started by
-     *     {@link OD#bind(ClassType)} or {@link OD.Local#bind(ClassType)},
+     *     {@link OD#bind(ClassType)}, {@link OD.Local#bind(ClassType)} or {@link OD#binding(ClassType)},
      *     finished by one of the <code>to(...)</code> methods, for example,
      * </p>
      * <pre>
@@ -420,7 +1043,7 @@ public class OD
      * </pre>
      * <p>
      *     The <code>to(...)</code> method creates a Binding, adds it to
-     *     the global or local binding list, depending how the builder was started.
+     *     the global or local binding list, or to none, depending how the builder was started.
      * </p>
      * <p>
      *     <b>Tags</b> -
@@ -439,13 +1062,16 @@ public class OD
      */
     static public final class BindingBuilder<T>
     {
-        boolean local;
+        BindingTarget target;
         ClassType<T> type;
         Predicate<Object[]> tagMatcher = NO_TAG;
+        boolean allSupertypes;
+        boolean eager;
+        boolean lazy;
 
-        BindingBuilder(boolean local, ClassType<T> type)
+        BindingBuilder(BindingTarget target, ClassType<T> type)
         {
-            this.local = local;
+            this.target = target;
             this.type = type;
         }
 
@@ -487,6 +1113,100 @@ public class OD
             return this;
         }
 
+        /**
+         * Make the binding apply to all supertypes of the type as well, except `Object`.
+         * <p>
+         *     Normally, a binding for `FooImpl` does not apply to a lookup of `Foo`,
+         *     even if `FooImpl` implements `Foo`. With this option,
+         * </p>
+         * <pre>
+         *     OD.bind(FooImpl.class).asAllSupertypes().to(fooImpl);
+         *     ...
+         *     OD.get(Foo.class);      // sees `fooImpl`
+         *     OD.get(FooImpl.class);  // sees `fooImpl`
+         * </pre>
+         * <p>
+         *     Generic supertypes are resolved accordingly; for example, with
+         *     <code>bind(ArrayList&lt;String&gt;).asAllSupertypes()</code>,
+         *     the binding applies to <code>List&lt;String&gt;</code>,
+         *     and to <code>Collection&lt;? extends CharSequence&gt;</code>, but not to <code>List&lt;Integer&gt;</code>.
+         * </p>
+         * <p>
+         *     If the type is raw, e.g. <code>bind(Dao.class).asAllSupertypes().to(MyDao.class)</code>,
+         *     a lookup of <code>Repo&lt;Cat&gt;</code> is served as a lookup of <code>Dao&lt;Cat&gt;</code>,
+         *     the subtype inferred from it.
+         * </p>
+         * <p>
+         *     This creates one binding, instead of one binding per supertype.
+         *     The supertypes are computed once when the binding is created.
+         * </p>
+         * @return `this` for method chaining
+         */
+        public BindingBuilder<T> asAllSupertypes()
+        {
+            this.allSupertypes = true;
+            return this;
+        }
+
+        /**
+         * Make the binding supply lazy proxies; the actual object is created upon first method call.
+         * <p>
+         *     The type must be an interface. For example
+         * </p>
+         * <pre>
+         *     OD.bind(Foo.class).lazily().to(FooImpl.class);
+         *     ...
+         *     Foo foo = OD.get(Foo.class);  // a proxy; FooImpl is not instantiated yet
+         *     foo.bar();                    // FooImpl is instantiated, then bar() is invoked on it
+         * </pre>
+         * <p>
+         *     This is intended for services that are expensive to create, and might not be used at all.
+         *     Each proxy creates its target at most once, in a thread-safe way;
+         *     the target is created by the supplier that the binding mapped to upon `OD.get()`.
+         * </p>
+         * <p>
+         *     The proxy forwards all method calls to the target, except `equals()` and `hashCode()`,
+         *     which are based on the identity of the proxy.
+         * </p>
+         * @return `this` for method chaining
+         */
+        public BindingBuilder<T> lazily()
+        {
+            if(!type.getTheClass().isInterface())
+                throw new IllegalStateException("lazy binding requires an interface type: "+type.toString(false));
+            this.lazy = true;
+            return this;
+        }
+
+        /**
+         * Mark the binding for eager initialization by {@link OD#warmUp()}.
+         * <p>
+         *     This is intended for global bindings to singletons that are expensive to create, e.g.
+         * </p>
+         * <pre>
+         *     OD.bind(Foo.class).eagerly().to(fooSingleton);  // a Supplier that caches the object
+         * </pre>
+         * <p>
+         *     The supplier should create the object once, and return the same object afterwards;
+         *     `warmUp()` simply does `OD.get(type, tags)` so that the object is created then.
+         * </p>
+         * <p>
+         *     The tags must be exact, i.e. either the default, or specified by {@link #tags(Object...)}.
+         *     Only global bindings can be eager, including bindings in a {@link BindingBatch},
+         *     and bindings created by {@link OD#binding(Class)} for {@link OD#replace(Binding, Binding)}.
+         *     The binding is warmed up only while it's in the global binding list;
+         *     it's no longer eager after it's {@link OD#unbind(Binding) unbound} or replaced.
+         * </p>
+         * @return `this` for method chaining
+         * @throws IllegalStateException if the binding is not global
+         */
+        public BindingBuilder<T> eagerly()
+        {
+            if(!target.global()) throw new IllegalStateException("only global bindings can be eager");
+            this.eager = true;
+            return this;
+        }
+
         // overload ambiguity to(null) - use to((Foo)null) instead
 
         /**
@@ -500,7 +1220,7 @@ public class OD
          */
         public Binding to(T instance)
         {
-            return finish( new InstanceBinding<T>(type, tagMatcher, instance));
+            return finish( wrap(new InstanceBinding<T>(type, tagMatcher, instance)) );
             // while we could simply forward to `to( ()->instance )`,
             // we want a named class with descriptive toString(), for diagnosis.
         }
@@ -517,7 +1237,7 @@ public class OD
          */
         public Binding to(Supplier<? extends T> supplier)
         {
-            return finish( new SupplierBinding<T>(type, tagMatcher, supplier));
+            return finish( wrap(new SupplierBinding<T>(type, tagMatcher, supplier)) );
         }
         /**
          * Create a Binding to an implementation class of T.
@@ -566,24 +1286,110 @@ public class OD
          *         public BarImpl(ClassType&lt;V&gt; typeV, Class&lt;K&gt; clazzK)
          *
          * </pre>
+         * <p>
+         *     <b>Dependencies</b>
+         * </p>
+         * <p>
+         *     If there's no such constructor, and `implClass` has exactly one constructor,
+         *     other parameters of that constructor are treated as dependencies,
+         *     each resolved by `OD.get(parameterType)` for every instantiation. For example
+         * </p>
+         * <pre>
+         *     public class FooImpl implements Foo
+         *     {
+         *         public FooImpl(Bar bar, List&lt;Baz&gt; bazList)
+         *         {
+         *             ...
+         * </pre>
+         * <p>
+         *     The parameter types must not contain type variables.
+         *     The global lookups are resolved once per binding, and re-resolved only if global bindings change.
+         * </p>
          * @return the Binding created
          */
-        public Binding to(Class<? extends T> implClass)
+        public Binding to(final Class<? extends T> implClass)
         {
-            return finish( ImplClassBinding.of(type, tagMatcher, implClass));
+            final ClassType<T> type = this.type;
+            final Predicate<Object[]> tagMatcher = this.tagMatcher;
+            final boolean allSupertypes = this.allSupertypes;
+            final boolean lazy = this.lazy;
+            return finish(new Supplier<Binding>()
+            {
+                public Binding get(){ return wrap(allSupertypes, lazy, type, ImplClassBinding.of(type, tagMatcher, implClass)); }
+            });
         }
 
-        Binding _toSupplierClass(Class<? extends Supplier> supplierClass)
+        Binding _toSupplierClass(final Class<? extends Supplier> supplierClass)
         {
-            return finish(SupplierClassBinding.of(type, tagMatcher, supplierClass));
+            final ClassType<T> type = this.type;
+            final Predicate<Object[]> tagMatcher = this.tagMatcher;
+            final boolean allSupertypes = this.allSupertypes;
+            final boolean lazy = this.lazy;
+            return finish(new Supplier<Binding>()
+            {
+                public Binding get(){ return wrap(allSupertypes, lazy, type, SupplierClassBinding.of(type, tagMatcher, supplierClass)); }
+            });
         }
 
-        Binding finish(Binding binding)
+        Binding wrap(Binding binding)
+        {
+            return wrap(allSupertypes, lazy, type, binding);
+        }
+        static Binding wrap(boolean allSupertypes, boolean lazy, ClassType<?> type, Binding binding)
         {
-            if(local)
-                LocalBindings.addLocal(binding);
+            if(lazy)
+                binding = new LazyBinding(type, binding);
+            return allSupertypes? new SupertypesBinding(type, binding) : binding;
+        }
+
+        /**
+         * Create a Binding to a pool of reusable objects.
+         * <p>
+         *     Each matching `OD.get()` leases an object from the pool;
+         *     the caller should release it back to the pool after use. See {@link Pool}.
+         * </p>
+         * @param maxSize max number of idle objects kept in the pool
+         * @param factory to create new objects
+         * @param reset to reset a released object for reuse; return false to discard it instead. can be null.
+         * @return the pool
+         */
+        public Pool<T> pooled(int maxSize, Supplier<? extends T> factory, Predicate<? super T> reset)
+        {
+            if(maxSize<1) throw new IllegalArgumentException("maxSize<1");
+            if(factory==null) throw new IllegalArgumentException("factory==null");
+            if(lazy) throw new IllegalStateException("pooled binding cannot be lazy");
+
+            Pool<T> pool = new Pool<T>(maxSize, factory, reset);
+            pool.binding = finish( wrap(new SupplierBinding<T>(type, tagMatcher, pool)) );
+            return pool;
+        }
+
+        // the binding is expensive to create; the target may want to defer that.
+        Binding finish(Supplier<? extends Binding> bindingFactory)
+        {
+            if(target.deferred())
+                return finish(new DeferredBinding(bindingFactory));
             else
-                GlobalBindings.addGlobal(binding);
+                return finish(bindingFactory.get()); // throws
+        }
+
+        Binding finish(Binding binding)
+        {
+            Object[] eagerTags = null;
+            if(eager)
+            {
+                if(tagMatcher==NO_TAG)
+                    eagerTags = new Object[0];
+                else if(tagMatcher instanceof ExactTagMatch)
+                    eagerTags = ((ExactTagMatch)tagMatcher).tags;
+                else
+                    throw new IllegalStateException("eager binding requires exact tags: "+tagMatcher);
+            }
+
+            target.add(binding); // throws, e.g. global bindings are sealed
+
+            if(eager) // takes effect only while the binding is in the global binding list
+                WarmUp.addEager(binding, new TypeAndTags<T>(type, eagerTags));
             return binding;
         }
     }
@@ -0,0 +1,212 @@
+package bayou.od;
+
+import bayou.jtype.ClassType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import bayou.od.OD.Binding;
+import bayou.od.OD.Predicate;
+import bayou.od.OD.Supplier;
+import bayou.od.OD.TypeAndTags;
+
+// the global bindings after OD.seal(). immutable; lookups need no locking.
+//
+// for bindings with a fixed (type,tags), e.g. bind(Foo.class).tags(x).to(foo), the suppliers of their
+// (type,tags) are resolved at sealing time and put in a perfect hash table.
+// other lookups, e.g. through wildcards or inference, are resolved on demand and memoized.
+class SealedBindings
+{
+    final BindingList globalList; // no longer modified
+
+    // perfect hash table, "hash and displace":
+    //   bucket = h & (seeds.length-1);  slot = mix(h, seeds[bucket]) & (keys.length-1)
+    // a key is either at `slot`, or not in the table. no probing.
+    final int[] seeds;
+    final TypeAndTags[] keys;
+    final Supplier[] values;
+
+    // keys that couldn't be placed in the table (e.g. equal hash codes), and on-demand lookups
+    final ConcurrentHashMap<TypeAndTags, Supplier> memo = new ConcurrentHashMap<TypeAndTags, Supplier>();
+
+    // cachedSuppliers: lookup results so far, still valid.
+    SealedBindings(BindingList globalList, Map<TypeAndTags, Supplier> cachedSuppliers)
+    {
+        this.globalList = globalList;
+
+        HashMap<TypeAndTags, Supplier> fixed = new HashMap<TypeAndTags, Supplier>(cachedSuppliers);
+        for(int i=0; i<globalList.allBindings.size; i++)
+        {
+            Binding binding = globalList.allBindings.get(i);
+            TypeAndTags<?> tnt = fixedKey(binding);
+            if(tnt==null || fixed.containsKey(tnt))
+                continue;
+            // not necessarily `binding` that wins (type,tags); a later binding may override it.
+            Supplier<?> supplier;
+            try
+            {
+                globalList.testFilters(tnt.type.getTheClass());
+                supplier = OD.findSupplier(globalList.forClass(tnt.type.getTheClass()), tnt.type, tnt.tags);
+            }
+            catch (RuntimeException e) // let it be thrown to whoever looks it up
+            {
+                continue;
+            }
+            if(supplier!=null)
+                fixed.put(tnt, supplier);
+        }
+
+        // make sure forClass() is read-only from now on; see BindingQueue.snapshot()
+        for(Class clazz : globalList.classBindings.keySet())
+            globalList.forClass(clazz);
+        globalList.wildBindings.snapshot();
+        globalList.unfilteredBindings.snapshot();
+
+        // build the table
+        int N = fixed.size();
+        int nBuckets = pow2(Math.max(1, N/4));   // ~4 keys per bucket
+        int nSlots = pow2(Math.max(2, N*2));     // load factor <= 0.5
+        seeds = new int[nBuckets];
+        keys = new TypeAndTags[nSlots];
+        values = new Supplier[nSlots];
+
+        ArrayList<ArrayList<TypeAndTags>> buckets = new ArrayList<ArrayList<TypeAndTags>>(nBuckets);
+        for(int b=0; b<nBuckets; b++)
+            buckets.add(new ArrayList<TypeAndTags>(4));
+        for(TypeAndTags tnt : fixed.keySet())
+            buckets.get(tnt.hashCode & (nBuckets-1)).add(tnt);
+
+        // place larger buckets first, while the table is still sparse
+        Integer[] order = new Integer[nBuckets];
+        for(int b=0; b<nBuckets; b++)
+            order[b] = b;
+        final ArrayList<ArrayList<TypeAndTags>> buckets_ = buckets;
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            public int compare(Integer b1, Integer b2)
+            {
+                return buckets_.get(b2).size() - buckets_.get(b1).size();
+            }
+        });
+
+        int[] slots = new int[16];
+        for(int b : order)
+        {
+            ArrayList<TypeAndTags> bucket = buckets.get(b);
+            if(bucket.isEmpty())
+                break; // the rest are empty too
+            if(slots.length<bucket.size())
+                slots = new int[bucket.size()];
+
+            boolean placed = false;
+            for(int seed=1; seed<=MAX_SEED && !placed; seed++)
+                placed = tryPlace(bucket, seed, slots);
+            if(placed)
+                continue;
+            // give up on this bucket. this only happens if keys have equal hash codes; very rare.
+            for(TypeAndTags tnt : bucket)
+                memo.put(tnt, fixed.get(tnt));
+        }
+        for(int slot=0; slot<nSlots; slot++)
+            if(keys[slot]!=null)
+                values[slot] = fixed.get(keys[slot]);
+    }
+
+    static final int MAX_SEED = 1000;
+
+    boolean tryPlace(ArrayList<TypeAndTags> bucket, int seed, int[] slots)
+    {
+        int mask = keys.length-1;
+        for(int i=0; i<bucket.size(); i++)
+        {
+            int slot = mix(bucket.get(i).hashCode, seed) & mask;
+            if(keys[slot]!=null)
+                return false;
+            for(int j=0; j<i; j++)
+                if(slots[j]==slot)
+                    return false;
+            slots[i] = slot;
+        }
+        for(int i=0; i<bucket.size(); i++)
+            keys[slots[i]] = bucket.get(i);
+        seeds[bucket.get(0).hashCode & (seeds.length-1)] = seed;
+        return true;
+    }
+
+    static int mix(int h, int seed)
+    {
+        h ^= seed * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    static int pow2(int n) // smallest power of 2 >= n
+    {
+        int p = 1;
+        while(p<n)
+            p <<= 1;
+        return p;
+    }
+
+    <T> Supplier<T> getSupplier(TypeAndTags<T> tnt)
+    {
+        int h = tnt.hashCode;
+        int seed = seeds[h & (seeds.length-1)];
+        if(seed!=0) // bucket is not empty
+        {
+            int slot = mix(h, seed) & (keys.length-1);
+            TypeAndTags key = keys[slot];
+            if(key!=null && key.hashCode==h && key.equals(tnt))
+                return OD.cast(values[slot]);
+        }
+
+        Supplier supplier = memo.get(tnt);
+        if(supplier==null)
+        {
+            Class clazz = tnt.type.getTheClass();
+            globalList.testFilters(clazz); // alien code; only reads globalList
+            supplier = OD.findSupplier(globalList.forClass(clazz), tnt.type, tnt.tags);  //throws
+            if(supplier!=null) // null not cached - if lookup fails, it's likely a config error.
+                memo.put(tnt, supplier);
+        }
+        return OD.cast(supplier);
+    }
+
+    // for simple bindings that apply to a fixed (type,tags). return null if not such a binding.
+    static TypeAndTags<?> fixedKey(Binding binding)
+    {
+        if(binding instanceof DeferredBinding)
+            binding = ((DeferredBinding)binding).binding;
+
+        ClassType<?> type;
+        Predicate<Object[]> tagMatcher;
+        if(binding instanceof InstanceBinding)
+        {
+            type = ((InstanceBinding<?>)binding).type;
+            tagMatcher = ((InstanceBinding<?>)binding).tagMatcher;
+        }
+        else if(binding instanceof SupplierBinding)
+        {
+            type = ((SupplierBinding<?>)binding).type;
+            tagMatcher = ((SupplierBinding<?>)binding).tagMatcher;
+        }
+        else if(binding instanceof ConstructorBinding)
+        {
+            type = ((ConstructorBinding<?>)binding).type;
+            tagMatcher = ((ConstructorBinding<?>)binding).tagMatcher;
+        }
+        else
+            return null;
+
+        Object[] tags;
+        if(tagMatcher==OD.NO_TAG)
+            tags = new Object[0];
+        else if(tagMatcher instanceof ExactTagMatch)
+            tags = ((ExactTagMatch)tagMatcher).tags;
+        else
+            return null;
+
+        return new TypeAndTags<Object>(OD.<ClassType<Object>>cast(type), tags);
+    }
+}
@@ -0,0 +1,86 @@
+package bayou.od;
+
+import bayou.jtype.ClassType;
+import bayou.jtype.TypeMath;
+
+import java.util.*;
+import bayou.od.OD.Binding;
+import bayou.od.OD.Supplier;
+
+// a binding for `type` that also applies to all supertypes of `type`, except Object.
+// see BindingBuilder.asAllSupertypes()
+//
+// e.g. type=ArrayList<String>; the binding applies to List<String>, Collection<? extends CharSequence>, etc.
+// the supertypes are computed once; getApplicableClasses() returns their classes,
+// so that the binding is indexed under each class in BindingList.
+//
+// if `type` is raw, e.g. bind(Dao.class).asAllSupertypes().to(MyDao.class), the inner binding may apply to
+// various Dao<X>, e.g. by inference. a parameterized query type Q, e.g. Repo<Cat>, is then forwarded to the
+// inner binding as the Dao<X> that is a subtype of Q, e.g. Dao<Cat>, inferred by diamond inference.
+class SupertypesBinding implements Binding
+{
+    final ClassType<?> type;
+    final Binding binding; // for `type` itself
+    // class => the supertype of `type` at that class. including `type` itself.
+    final HashMap<Class, ClassType<?>> superTypes;
+
+    SupertypesBinding(ClassType<?> type, Binding binding)
+    {
+        this.type = type;
+        this.binding = binding;
+        this.superTypes = superTypes(type);
+    }
+
+    static HashMap<Class, ClassType<?>> superTypes(ClassType<?> type)
+    {
+        ClassType<?> type2 = TypeMath.doCaptureConversion(type); // getSuperType() requires no wildcard
+
+        HashMap<Class, ClassType<?>> map = new HashMap<Class, ClassType<?>>();
+        ArrayList<Class> todo = new ArrayList<Class>();
+        todo.add(type.getTheClass());
+        while(!todo.isEmpty())
+        {
+            Class clazz = todo.remove(todo.size()-1);
+            if(clazz==Object.class || map.containsKey(clazz))
+                continue;
+            map.put(clazz, TypeMath.getSuperType(type2, clazz));
+
+            Class superClass = clazz.getSuperclass();
+            if(superClass!=null)
+                todo.add(superClass);
+            Collections.addAll(todo, clazz.getInterfaces());
+        }
+        return map;
+    }
+
+    public String toString()
+    {
+        return String.format("SupertypesBinding(type=%s, binding=%s)", type.toString(false), binding);
+    }
+
+    public <T> Supplier<? extends T> map(ClassType<T> type, Object... tags)
+    {
+        ClassType<?> superType = superTypes.get(type.getTheClass());
+        if(superType==null)
+            return null;
+
+        if(this.type.isRawType() && !type.getTypeArgs().isEmpty())
+        {
+            ClassType<?> subType = TypeMath.tryDiamondInfer(type, this.type.getTheClass()); // Dao<X> <: type
+            if(subType==null)
+                return null;
+            return OD.cast(binding.map(subType, tags));
+        }
+
+        if(!TypeMath.isSubType(superType, type))
+            return null;
+
+        // this.type <: superType <: type
+        return OD.cast(binding.map(this.type, tags)); // tags are checked by `binding`
+    }
+
+    public Set<? extends Class> getApplicableClasses()
+    {
+        return Collections.unmodifiableSet(superTypes.keySet());
+    }
+}
@@ -7,8 +7,6 @@ import java.util.Set;
 import bayou.od.OD.Predicate;
 import bayou.od.OD.Supplier;
 
-import static bayou.od.ConstructorSupplier.newInstance;
-
 /*
     bind type T to supplier class P
     T's class is A. A has n type params.
@@ -121,6 +119,7 @@ class SupplierClassBinding
         final Class classP;
         final Predicate<Object[]> tagMatcher;
         final TypeArgConstructor tac;
+        final DiamondTemplate template; // the inference problem, prepared at bind time
 
         ViaInference(Class classA, Class classP, Predicate<Object[]> tagMatcher, TypeArgConstructor tac)
         {
@@ -128,6 +127,7 @@ class SupplierClassBinding
             this.classP = classP;
             this.tagMatcher = tagMatcher;
             this.tac = tac;
+            this.template = DiamondTemplate.of(Supplier.class, classP);
         }
 
         public String toString()
@@ -143,11 +143,9 @@ class SupplierClassBinding
             if(!tagMatcher.test(tags))
                 return null;
 
-            ClassType<?> P_v1_vm;
-            try
-            {   P_v1_vm = TypeMath.diamondInfer(_Pwe(typeQ), classP); }
-            catch (Exception error) // inference fails
-            {   return null; }
+            ClassType<?> P_v1_vm = template.tryInfer(_Pwe(typeQ));
+            if(P_v1_vm==null) // inference fails
+                return null;
 
             Object[] a1_ak = tac.getConstructorArgs(P_v1_vm);
             if(a1_ak==null) // mismatch Ai and vj
@@ -156,7 +154,7 @@ class SupplierClassBinding
             Object supplier;
             try
             {
-                supplier = newInstance(tac.constructor, a1_ak);
+                supplier = tac.newInstance(a1_ak);
             }
             catch (IllegalArgumentException e)
             {
@@ -186,7 +184,7 @@ class SupplierClassBinding
             if(!TypeMath.isSubType(z, typeT))
                 throw new IllegalArgumentException(String.format("%s cannot provide %s", supplierClassP, typeT));
 
-            Supplier<? extends T> supplier = OD.cast(newInstance(tac.constructor)); // new P (). IllegalArgEx?
+            Supplier<? extends T> supplier = OD.cast(newSupplier(tac, tac.getConstructorArgs(declP))); // new P ()
             return new SupplierBinding<T>(typeT, tagMatcher, supplier);
         }
 
@@ -194,12 +192,58 @@ class SupplierClassBinding
         ClassType<?> P_v1_vm = TypeMath.diamondInfer(_Pwe(typeT), supplierClassP); // throws. wrap message?
         Object[] a1_ak = tac.getConstructorArgs(P_v1_vm);
         if(a1_ak==null) // mismatch Ai and vj
-            throw new IllegalArgumentException(String.format("the type-arg constructor %s doesn't match type %s",tac.constructor,P_v1_vm));
-        Supplier<? extends T> supplier = OD.cast(newInstance(tac.constructor, a1_ak)); // throws IllegalArgEx
+            throw new IllegalArgumentException(String.format("the type-arg constructor %s doesn't match type %s",tac,P_v1_vm));
+        Supplier<? extends T> supplier = OD.cast(newSupplier(tac, a1_ak)); // throws IllegalArgEx
         return new SupplierBinding<T>(typeT, tagMatcher, supplier);
 
         // note: if supplier constructor throws IllegalArgumentException to reject inferred v1..vm
         //       it propagates up to caller, who probably made a programming error.
+        //       if P has dependencies, it's thrown on the first lookup instead.
+    }
+
+    // new P(a1..ak), at bind time.
+    // if P has dependencies, P is created on the first get() instead; a dependency must be resolved
+    // at lookup time, e.g. it may be bound after P in the same batch, or later at startup.
+    static Supplier<?> newSupplier(TypeArgConstructor tac, Object[] a1_ak) throws RuntimeException
+    {
+        if(tac.argDep==null)
+            return (Supplier<?>)tac.newInstance(a1_ak); // throws
+        Supplier<Supplier<?>> factoryP = tac.supplier(a1_ak);
+        return new OnFirstGet<Object>(factoryP);
+    }
+
+    // creates the supplier on the first get(), and delegates to it.
+    // the supplier is created only once; it may have state, e.g. a singleton.
+    static class OnFirstGet<T> implements Supplier<T>
+    {
+        final Supplier<? extends Supplier<?>> factory;
+        volatile Supplier<? extends T> supplier;
+
+        OnFirstGet(Supplier<? extends Supplier<?>> factory)
+        {
+            this.factory = factory;
+        }
+
+        public String toString()
+        {
+            Supplier<? extends T> s = supplier;
+            return (s!=null)? s.toString() : "OnFirstGet(factory="+factory+")";
+        }
+
+        public T get()
+        {
+            Supplier<? extends T> s = supplier;
+            if(s==null)
+            {
+                synchronized (this)
+                {
+                    s = supplier;
+                    if(s==null)
+                        supplier = s = OD.cast(factory.get()); // throws; tried again on next get()
+                }
+            }
+            return s.get();
+        }
     }
 
 
@@ -2,11 +2,14 @@ package bayou.od;
 
 import bayou.jtype.*;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.Type;
+import java.lang.reflect.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import _bayou._tmp._ClassMemo;
+import bayou.od.OD.Supplier;
 
 /*
     Given a class B<V1..Vm>, if we new B<v1..vm>(), due to erasure,
@@ -28,20 +31,51 @@ import java.util.List;
     We don't require that the constructor is accessible; we'll bypass access checking.
     User can use a type-arg constructor not accessible to general public, that is fine.
 
+    If a factory of B was generated at compile time (see GenerateFactory), it describes the
+    type-arg constructor, or the injecting constructor, and invokes it without reflection.
+    we don't look at constructors at all.
+
     Given type args v1..vm for V1..Vm, we get constructor args a1..ak for A1..Ak.
     If Ui=Vj, ai=vj. Type of vj must match Ci: e.g. error if vj is ArrayType, Ci is ClassType.
 
+    injecting constructor:
+        if no type-arg constructor is found, and B has exactly one constructor, B(A1..Ak),
+        each Ai is either Ci<Ui> as above, or a dependency - a class type containing no type variables.
+        a dependency ai is resolved by OD.get(Ai) for each instantiation. see Dependency.
+        B must not be an inner class; we don't inject enclosing instances.
+
 */
 class TypeArgConstructor
 {
-    Constructor constructor;
+    Constructor<?> constructor; // null if `factory` is used
+    GeneratedFactory factory;
+    // creates suppliers by `constructor`; created on first use, e.g. it may spin a class. see constructorFactory()
+    volatile ConstructorSupplier.FallbackFactory<?> constructorFactory;
     int k;
     Class[] argC;  // ReferenceType, ArrayType, ClassType or Class
     int[]   argU;  // if Ui=Vj, argU[i]=j
+    ClassType<?>[] argDep; // if Ai is a dependency, argDep[i]=Ai, argU[i]=-1. null if no dependency
+    ClassType<?> decl;     // B<V1..Vm>
+
+    // B<v1..vm> => a1..ak. the same class is usually bound/inferred to the same few types.
+    final ConcurrentHashMap<ClassType<?>, Object[]> argsMemo = new ConcurrentHashMap<ClassType<?>, Object[]>();
+    static final Object[] NO_MATCH = {};
 
-    // return a1..ak
+    // return a1..ak. the returned array must not be modified.
     // if arg types don't match, return null
     Object[] getConstructorArgs(ClassType<?> B_v1_vm)
+    {
+        Object[] consArgs = argsMemo.get(B_v1_vm);
+        if(consArgs==null)
+        {
+            consArgs = getConstructorArgs0(B_v1_vm);
+            if(consArgs==null)
+                consArgs = NO_MATCH;
+            argsMemo.put(B_v1_vm, consArgs);
+        }
+        return (consArgs==NO_MATCH)? null : consArgs;
+    }
+    Object[] getConstructorArgs0(ClassType<?> B_v1_vm)
     {
         // v1..vm
         List<ReferenceType<?>> typeArgs = OD.cast(B_v1_vm.getTypeArgs()); // no wildcard
@@ -49,6 +83,11 @@ class TypeArgConstructor
         Object[] consArgs = new Object[k];
         for(int i=0; i<k; i++)
         {
+            if(argDep!=null && argDep[i]!=null)
+            {
+                consArgs[i] = new Dependency(argDep[i]); // memoized with a1..ak per B<v1..vm>; see argsMemo
+                continue;
+            }
             int j = argU[i];
             ReferenceType<?> vj = typeArgs.get(j);
             Class Ci = argC[i];
@@ -68,13 +107,113 @@ class TypeArgConstructor
         return consArgs;
     }
 
+    // create a new instance with a1..ak. dependencies, if any, are resolved now.
+    Object newInstance(Object... args) throws RuntimeException
+    {
+        if(argDep!=null)
+            args = resolve(args);
+        if(factory!=null)
+            return factory.newInstance0(args);
+        if(argDep!=null) // for each instance, see InjectingSupplier
+            return constructorFactory().supplier(args).get();
+        return ConstructorSupplier.newInstance(constructor, args); // usually once, e.g. a supplier object
+    }
+
+    // replace Dependency args with the objects they resolve to
+    static Object[] resolve(Object[] args) throws RuntimeException
+    {
+        Object[] resolved = args.clone();
+        for(int i=0; i<resolved.length; i++)
+            if(resolved[i] instanceof Dependency)
+                resolved[i] = ((Dependency)resolved[i]).get();
+        return resolved;
+    }
+
+    // a supplier of new instances with a1..ak. it's cheap to create, once the constructor factory is created.
+    // the caller (a binding) has checked that T :> B<v1..vm>, so instances can be treated as T.
+    <T> Supplier<T> supplier(Object[] args)
+    {
+        if(argDep!=null)
+            return new InjectingSupplier<T>(this, args);
+        if(factory!=null)
+            return new GeneratedFactory.FactorySupplier<T>(factory, args);
+        return OD.cast(constructorFactory().supplier(args));
+    }
+
+    ConstructorSupplier.FallbackFactory<?> constructorFactory()
+    {
+        ConstructorSupplier.FallbackFactory<?> cf = constructorFactory;
+        if(cf==null) // benign race; at worst created more than once
+            constructorFactory = cf = ConstructorSupplier.factory(constructor);
+        return cf;
+    }
+
+    public String toString()
+    {
+        return (factory!=null)? factory.toString() : String.valueOf(constructor);
+    }
+
+    // dependencies are resolved for each instance; the instance is then created
+    // by the generated factory, or the constructor factory, same as without dependencies.
+    static class InjectingSupplier<T> implements Supplier<T>
+    {
+        final TypeArgConstructor tac;
+        final Object[] args;
+
+        InjectingSupplier(TypeArgConstructor tac, Object[] args)
+        {
+            this.tac = tac;
+            this.args = args;
+        }
+
+        public String toString()
+        {
+            return String.format("InjectingSupplier(constructor=%s, args=%s)", tac, Arrays.toString(args));
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get()
+        {
+            return (T)tac.newInstance(args);
+        }
+    }
+
+    // analysis of a class requires reflection; it's done once per class.
+    // note that the same class may be bound many times, under different types or tags.
+    static final _ClassMemo<TypeArgConstructor> memo = new _ClassMemo<TypeArgConstructor>()
+    {
+        protected TypeArgConstructor compute(Class<?> clazz)
+        {
+            TypeArgConstructor tac = analyze(clazz); // throws; error is not cached
+            tac.decl = ClassType.withTypeVars(clazz);
+            return tac;
+        }
+    };
+
     static TypeArgConstructor of(Class<?> clazz) throws RuntimeException
+    {
+        return memo.get(clazz);
+    }
+
+    static TypeArgConstructor analyze(Class<?> clazz) throws RuntimeException
     {
         // TypeMath.assertIsClassOrInterface(clazz); // caller did that
 
         if(Modifier.isAbstract(clazz.getModifiers())) // also true if clazz is interface
             throw new IllegalArgumentException(String.format("%s cannot be instantiated", clazz));
 
+        GeneratedFactory factory = GeneratedFactory.find(clazz); // throws
+        if(factory!=null)
+        {
+            TypeArgConstructor tac = new TypeArgConstructor();
+            tac.factory = factory;
+            tac.k = factory.argC.length;
+            tac.argC = factory.argC;
+            tac.argU = factory.argU;
+            tac.argDep = factory.dependencies(); // throws
+            return tac;
+        }
+
         ClassType<?> decl = ClassType.of(clazz);
         List<TypeVar<?>> V1_Vm = decl.getTypeVars();
 
@@ -84,7 +223,7 @@ class TypeArgConstructor
 
         int maxK = -1;
         ArrayList<TypeArgConstructor> candidates = new ArrayList<TypeArgConstructor>();
-        for(Constructor cons : clazz.getDeclaredConstructors())
+        for(Constructor<?> cons : clazz.getDeclaredConstructors())
         {
             TypeArgConstructor tac = tryCandidate(cons, maxK, V1_Vm);
             if(tac!=null)
@@ -99,7 +238,12 @@ class TypeArgConstructor
             }
         }
         if(candidates.size()==0)
+        {
+            TypeArgConstructor tac = ofInjecting(clazz, V1_Vm);
+            if(tac!=null)
+                return tac;
             throw new IllegalArgumentException("no type-arg constructor found for "+clazz);
+        }
         if(candidates.size()>1)
             throw new IllegalArgumentException(String.format("multiple type-arg constructors found:%n %s %n %s",
                 candidates.get(0).constructor, candidates.get(1).constructor));
@@ -112,11 +256,16 @@ class TypeArgConstructor
     //shortcut for m=0: simply the default constructor
     static TypeArgConstructor ofNonGeneric(Class<?> clazz) throws RuntimeException
     {
-        Constructor cons;
+        Constructor<?> cons;
         try
         {   cons = clazz.getDeclaredConstructor();    } // the default one
         catch (NoSuchMethodException e)
-        {   throw new IllegalArgumentException("no default constructor found for "+clazz); }
+        {
+            TypeArgConstructor tac = ofInjecting(clazz, Collections.<TypeVar<?>>emptyList());
+            if(tac!=null)
+                return tac;
+            throw new IllegalArgumentException("no default constructor found for "+clazz);
+        }
         TypeArgConstructor tac = new TypeArgConstructor();
         tac.constructor = cons;
         tac.k = 0;
@@ -126,7 +275,7 @@ class TypeArgConstructor
         return tac;
     }
 
-    static TypeArgConstructor tryCandidate(Constructor cons, int maxK, List<TypeVar<?>> V1_Vm)
+    static TypeArgConstructor tryCandidate(Constructor<?> cons, int maxK, List<TypeVar<?>> V1_Vm)
     {
         Type[] A1_Ak = cons.getGenericParameterTypes();
         if(A1_Ak.length < maxK)
@@ -138,32 +287,101 @@ class TypeArgConstructor
         tac.argC = new Class[tac.k];
         tac.argU = new int[tac.k];
         for(int i=0; i<tac.k; i++)
-        {
-            Type Ai_1 = A1_Ak[i];
-            JavaType<?> Ai_2 = JavaType.convertFrom(Ai_1);
-            if(!(Ai_2 instanceof ClassType)) // must be in the form of Ci<Ui>
+            if(!tryTypeArg(tac, i, JavaType.convertFrom(A1_Ak[i]), V1_Vm))
                 return null;
-            ClassType<?> Ai = (ClassType<?>)Ai_2;
-            Class Ci = Ai.getTheClass();
-            if(!validCi(Ci))
-                return null;
-            if(Ai.getTypeArgs().size()!=1) // no Ui
-                return null;
-            TypeArg Ui_1 = Ai.getTypeArgs().get(0);
-            if(!(Ui_1 instanceof TypeVar))
-                return null;
-            TypeVar<?> Ui = (TypeVar<?>)Ui_1;
-            int j = find_j(Ui, V1_Vm);
-            if(j<0)
+        // this is a candidate
+        return tac;
+    }
+
+    // if Ai is in the form of Ci<Ui>, set argC[i], argU[i]
+    static boolean tryTypeArg(TypeArgConstructor tac, int i, JavaType<?> Ai_2, List<TypeVar<?>> V1_Vm)
+    {
+        if(!(Ai_2 instanceof ClassType)) // must be in the form of Ci<Ui>
+            return false;
+        ClassType<?> Ai = (ClassType<?>)Ai_2;
+        Class Ci = Ai.getTheClass();
+        if(!validCi(Ci))
+            return false;
+        if(Ai.getTypeArgs().size()!=1) // no Ui
+            return false;
+        TypeArg Ui_1 = Ai.getTypeArgs().get(0);
+        if(!(Ui_1 instanceof TypeVar))
+            return false;
+        TypeVar<?> Ui = (TypeVar<?>)Ui_1;
+        int j = find_j(Ui, V1_Vm);
+        if(j<0)
+            return false;
+        // Ai is good
+        tac.argC[i] = Ci;
+        tac.argU[i] = j;
+        return true;
+    }
+
+    // the sole constructor, with dependency parameters. return null if not applicable.
+    static TypeArgConstructor ofInjecting(Class<?> clazz, List<TypeVar<?>> V1_Vm)
+    {
+        if(clazz.getEnclosingClass()!=null && !Modifier.isStatic(clazz.getModifiers()))
+            return null; // inner class. constructor requires enclosing instance
+
+        Constructor<?>[] constructors = clazz.getDeclaredConstructors();
+        if(constructors.length!=1)
+            return null;
+        Constructor<?> cons = constructors[0];
+        Type[] A1_Ak = cons.getGenericParameterTypes();
+        if(A1_Ak.length!=cons.getParameterTypes().length) // synthetic params; don't bother
+            return null;
+
+        TypeArgConstructor tac = new TypeArgConstructor();
+        tac.constructor = cons;
+        tac.k = A1_Ak.length;
+        tac.argC = new Class[tac.k];
+        tac.argU = new int[tac.k];
+        tac.argDep = new ClassType<?>[tac.k];
+        for(int i=0; i<tac.k; i++)
+        {
+            JavaType<?> Ai = JavaType.convertFrom(A1_Ak[i]);
+            if(tryTypeArg(tac, i, Ai, V1_Vm))
+                continue;
+            if(!(Ai instanceof ClassType) || hasTypeVar(A1_Ak[i]))
                 return null;
-            // Ai is good
-            tac.argC[i] = Ci;
-            tac.argU[i] = j;
+            tac.argC[i] = ((ClassType<?>)Ai).getTheClass();
+            tac.argU[i] = -1;
+            tac.argDep[i] = (ClassType<?>)Ai;
         }
-        // this is a candidate
+        tac.constructor.setAccessible(true);
         return tac;
     }
 
+    static boolean hasTypeVar(Type type)
+    {
+        if(type instanceof TypeVariable)
+            return true;
+        if(type instanceof GenericArrayType)
+            return hasTypeVar(((GenericArrayType)type).getGenericComponentType());
+        if(type instanceof WildcardType)
+        {
+            WildcardType wt = (WildcardType)type;
+            for(Type bound : wt.getUpperBounds())
+                if(hasTypeVar(bound))
+                    return true;
+            for(Type bound : wt.getLowerBounds())
+                if(hasTypeVar(bound))
+                    return true;
+            return false;
+        }
+        if(type instanceof ParameterizedType)
+        {
+            ParameterizedType pt = (ParameterizedType)type;
+            if(pt.getOwnerType()!=null && hasTypeVar(pt.getOwnerType()))
+                return true;
+            for(Type arg : pt.getActualTypeArguments())
+                if(hasTypeVar(arg))
+                    return true;
+            return false;
+        }
+        return false; // Class
+    }
+
     static boolean validCi(Class Ci)
     {
         return Ci==Class.class || Ci==ClassType.class || Ci==ArrayType.class || Ci==ReferenceType.class;
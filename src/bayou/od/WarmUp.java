@@ -0,0 +1,263 @@
+package bayou.od;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import bayou.jtype.ClassType;
+import bayou.od.OD.Binding;
+import bayou.od.OD.TypeAndTags;
+
+// eager initialization of global bindings. see BindingBuilder.eagerly() and OD.warmUp()
+//
+// each eager (type,tags) is a task, which simply does OD.get(type,tags); the supplier is supposed to
+// create the object once and cache it. tasks are run concurrently.
+// while a task is running, OD.get() calls in the same thread are its dependencies.
+// if a dependency is an eager task that is not started yet, it is run inline, right there, as it would
+// have been without warm-up; if it's being run by another thread, we wait for it.
+// so dependencies are done before their dependents, and independent tasks are done concurrently.
+// a thread that waits for a dependency is blocked; the pool may need more threads than cores.
+class WarmUp
+{
+    // bindings marked eager by BindingBuilder => their (type,tags).
+    // a binding is marked after it's added to its target, e.g. to the global binding list, or to a batch;
+    // the mark is removed when it's unbound or replaced.
+    // a binding is eager only while it's in the global binding list; warm-up takes the keys of the eager
+    // bindings in the list, in order. so a binding that is never added (e.g. its batch is not committed)
+    // is not warmed up.
+    // weak keys; a binding that is dropped is not retained. bindings created by BindingBuilder don't override
+    // equals(), so the map works by identity.
+    static final WeakHashMap<Binding, TypeAndTags> eagerBindings = new WeakHashMap<Binding, TypeAndTags>(); // guarded by itself
+
+    static void addEager(Binding binding, TypeAndTags tnt)
+    {
+        synchronized (eagerBindings)
+        {
+            eagerBindings.put(binding, tnt);
+        }
+    }
+
+    static void removeEager(Binding binding)
+    {
+        synchronized (eagerBindings)
+        {
+            eagerBindings.remove(binding);
+        }
+    }
+
+    // keys of eager bindings in the global binding list, in order, without duplicates
+    static ArrayList<TypeAndTags> eagerKeys()
+    {
+        List<Binding> bindings = GlobalBindings.allBindings();
+        LinkedHashSet<TypeAndTags> keys = new LinkedHashSet<TypeAndTags>();
+        synchronized (eagerBindings)
+        {
+            if(eagerBindings.isEmpty())
+                return new ArrayList<TypeAndTags>();
+            for(Binding binding : bindings)
+            {
+                TypeAndTags tnt = eagerBindings.get(binding);
+                if(tnt!=null)
+                    keys.add(tnt);
+            }
+        }
+        return new ArrayList<TypeAndTags>(keys);
+    }
+
+    // true during warm-up. OD.get() checks it on every call; only then is the thread local consulted.
+    // volatile: OD.get() in any thread must see it, e.g. a thread started by a warm-up task.
+    // a volatile read is as cheap as a plain one on common hardware; it's not a hot-path cost worth avoiding.
+    static volatile boolean active;
+
+    static final ThreadLocal<Task> currentTask_TL = new ThreadLocal<Task>();
+
+    // guards task states and waits. warm-up is infrequent; keep it simple.
+    static final Object lock = new Object();
+    static HashMap<TypeAndTags, Task> tasks; // of the current warm-up
+    static final HashMap<Thread, Task> waiting = new HashMap<Thread, Task>(); // thread -> task it waits for
+
+    static class Task
+    {
+        final TypeAndTags<?> tnt;
+        Thread owner; // thread running it, once it's claimed
+        boolean done;
+        Throwable error;
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Task(TypeAndTags<?> tnt)
+        {
+            this.tnt = tnt;
+        }
+
+        public String toString()
+        {
+            return "WarmUp.Task("+tnt.type.toString(false)+", "+Arrays.toString(tnt.tags)+")";
+        }
+
+        boolean claim()
+        {
+            synchronized (lock)
+            {
+                if(owner!=null)
+                    return false;
+                owner = Thread.currentThread();
+                return true;
+            }
+        }
+
+        void run() // by owner
+        {
+            Task prev = currentTask_TL.get();
+            currentTask_TL.set(this);
+            try
+            {
+                OD.get(tnt.type, tnt.tags);
+            }
+            catch (Throwable t)
+            {
+                error = t;
+            }
+            finally
+            {
+                currentTask_TL.set(prev);
+                synchronized (lock)
+                {
+                    done = true;
+                }
+                latch.countDown();
+            }
+        }
+    }
+
+    // called by OD.get() if active
+    static void beforeGet(ClassType<?> type, Object[] tags)
+    {
+        Task current = currentTask_TL.get();
+        if(current==null) // not a warm-up thread
+            return;
+
+        Task dep;
+        synchronized (lock)
+        {
+            HashMap<TypeAndTags, Task> _tasks = tasks;
+            dep = (_tasks==null)? null : _tasks.get(new TypeAndTags<Object>(OD.<ClassType<Object>>cast(type), tags));
+        }
+        if(dep==null || dep==current)
+            return;
+
+        if(dep.claim()) // not started yet; run it now, in this thread
+        {
+            dep.run();
+            return;
+        }
+
+        Thread thread = Thread.currentThread();
+        synchronized (lock)
+        {
+            if(dep.done || wouldDeadlock(dep, thread))
+                return; // proceed without waiting; as if there's no warm-up
+            waiting.put(thread, dep);
+        }
+        try
+        {
+            dep.latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            synchronized (lock)
+            {
+                waiting.remove(thread);
+            }
+        }
+    }
+
+    // if `thread` waits for `dep`, would there be a cycle of waiting threads?
+    static boolean wouldDeadlock(Task dep, Thread thread)
+    {
+        // caller holds lock
+        for(Task t=dep; t!=null; t=waiting.get(t.owner))
+            if(t.owner==thread)
+                return true;
+        return false;
+    }
+
+    static synchronized void run(ExecutorService executor) throws RuntimeException
+    {
+        ArrayList<Task> taskList = new ArrayList<Task>();
+        HashMap<TypeAndTags, Task> taskMap = new HashMap<TypeAndTags, Task>();
+        for(TypeAndTags tnt : eagerKeys())
+        {
+            Task task = new Task(tnt);
+            taskList.add(task);
+            taskMap.put(tnt, task);
+        }
+        if(taskList.isEmpty())
+            return;
+
+        ExecutorService pool = executor;
+        if(pool==null)
+            pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+            {
+                final AtomicInteger seq = new AtomicInteger(0);
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "OD-warm-up-"+seq.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+        synchronized (lock)
+        {
+            tasks = taskMap;
+        }
+        active = true;
+        try
+        {
+            for(final Task task : taskList)
+            {
+                pool.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        if(task.claim()) // otherwise it's been run inline by a dependent
+                            task.run();
+                    }
+                });
+            }
+            for(Task task : taskList)
+                task.latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while warming up", e);
+        }
+        finally
+        {
+            active = false;
+            synchronized (lock)
+            {
+                tasks = null;
+            }
+            if(executor==null)
+                pool.shutdown();
+        }
+
+        for(Task task : taskList) // throw the first error, in the order of eager bindings
+        {
+            Throwable t = task.error;
+            if(t==null)
+                continue;
+            if(t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            if(t instanceof Error)
+                throw (Error)t;
+            throw new RuntimeException(t);
+        }
+    }
+
+}
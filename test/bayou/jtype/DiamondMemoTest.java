@@ -0,0 +1,86 @@
+package bayou.jtype;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DiamondMemoTest
+{
+    static final ClassType<?> target = ClassType.of(List.class, Wildcard.extends_(String.class));
+    static final TypeMemo.Pair key = new TypeMemo.Pair(0, target, ArrayList.class);
+
+    @Test
+    public void unsatisfiableIsMemoized()
+    {
+        ClassType<?> target = ClassType.of(List.class, Wildcard.super_(Integer.class));
+        assertNull(TypeInference.tryDiamondInfer(target, MyList.class));
+        Object failure = TypeInference.diamondMemo.global.map.get(new TypeMemo.Pair(0, target, MyList.class));
+        assertTrue(failure instanceof TypeInference.DiamondFailure);
+    }
+    static class MyList<E extends CharSequence> extends ArrayList<E>
+    {
+    }
+
+    // run the inference with less and less stack left, until it's aborted by StackOverflowError inside solve().
+    // the failure must not be memoized; with enough stack, the inference succeeds.
+    @Test
+    public void abortedIsNotMemoized() throws Exception
+    {
+        final int[] aborted = {0};
+        final Throwable[] error = {null};
+        Thread thread = new Thread(null, new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    for(int depth=0; ; depth++)
+                    {
+                        clearMemo();
+                        Object result;
+                        try
+                        {
+                            result = inferAtDepth(depth);
+                        }
+                        catch (StackOverflowError e) // not in solve()
+                        {
+                            return;
+                        }
+                        if(result instanceof TypeInference.DiamondFailure)
+                        {
+                            aborted[0]++;
+                            assertNull(TypeInference.diamondMemo.global.map.get(key));
+                        }
+                    }
+                }
+                catch (Throwable t)
+                {
+                    error[0] = t;
+                }
+            }
+        }, "small-stack", 256*1024);
+        thread.start();
+        thread.join();
+        if(error[0]!=null)
+            throw new AssertionError(error[0]);
+        assertTrue("inference was never aborted", aborted[0] > 0);
+
+        clearMemo();
+        assertEquals(ClassType.of(ArrayList.class, String.class), TypeInference.tryDiamondInfer(target, ArrayList.class));
+        assertNotNull(TypeInference.diamondMemo.global.map.get(key));
+    }
+    static void clearMemo()
+    {
+        TypeInference.diamondMemo.global.map.clear();
+        TypeInference.diamondMemo.global.size.set(0);
+    }
+    static Object inferAtDepth(int depth)
+    {
+        if(depth>0)
+            return inferAtDepth(depth-1);
+        return TypeInference.diamondResult(target, ArrayList.class);
+    }
+}
@@ -0,0 +1,151 @@
+package bayou.jtype;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+// DiamondTemplate must agree with the full inference of TypeInference.diamondInfer
+public class DiamondTemplateTest
+{
+    interface Source<T> {}
+    static class ListSource<E> implements Source<List<E>> {}
+    static class Swap<K, V> extends HashMap<V, K> {}
+    static class Fixed<T> extends HashMap<String, T> {}
+    static class Twice<T> extends HashMap<T, T> {}
+    static class Bounded<T extends Number> extends ArrayList<T> {}
+    static class Nest<T> extends ArrayList<List<T>> {}
+    static class Free<T, U> extends ArrayList<T> {} // U is not determined by the target type
+    static class SelfBound<T extends Comparable<T>> extends ArrayList<T> {}
+
+    static final Class<?>[][] templates = {
+        { List.class, ArrayList.class }, { Collection.class, ArrayList.class }, { Iterable.class, ArrayList.class },
+        { Map.class, HashMap.class }, { Map.class, TreeMap.class }, { Source.class, ListSource.class },
+        { Map.class, Swap.class }, { HashMap.class, Swap.class }, { Map.class, Fixed.class }, { Map.class, Twice.class },
+        { List.class, Bounded.class }, { Collection.class, Bounded.class }, { List.class, Nest.class },
+        { List.class, Free.class }, { List.class, SelfBound.class },
+    };
+    static final Class<?>[] targetClasses1 = { List.class, Collection.class, Iterable.class, Source.class };
+    static final Class<?>[] targetClasses2 = { Map.class, HashMap.class };
+    static final Class<?>[] leaves = { Object.class, String.class, CharSequence.class, Integer.class, Number.class };
+
+    static ClassType<?> randomType(Random random, Class<?> clazz, int depth)
+    {
+        TypeArg[] args = new TypeArg[clazz.getTypeParameters().length];
+        for(int i=0; i<args.length; i++)
+            args[i] = randomArg(random, depth);
+        return ClassType.of(clazz, args);
+    }
+    static TypeArg randomArg(Random random, int depth)
+    {
+        ReferenceType<?> type;
+        int k = random.nextInt(depth>0? 3 : 1);
+        if(k==0)
+            type = ClassType.of(leaves[random.nextInt(leaves.length)]);
+        else if(k==1)
+            type = randomType(random, targetClasses1[random.nextInt(targetClasses1.length)], depth-1);
+        else
+            type = randomType(random, targetClasses2[random.nextInt(targetClasses2.length)], depth-1);
+        switch(random.nextInt(5))
+        {
+            case 0: return Wildcard.unbounded();
+            case 1: return Wildcard.extends_(type);
+            case 2: return Wildcard.super_(type);
+            default: return type;
+        }
+    }
+
+    // full inference, not memoized
+    static ClassType<?> reference(ClassType<?> targetType, Class<?> genericClass)
+    {
+        if(!targetType.getTheClass().isAssignableFrom(genericClass))
+            return null;
+        TypeInference infer = TypeInference.diamondInfer0(targetType, genericClass);
+        if(!infer.oneSolutionIsFound)
+            return null;
+        return (ClassType<?>)TypeInference.diamondResult(infer, genericClass);
+    }
+
+    // captured vars in a solution are fresh in each inference
+    static String normalize(ClassType<?> type)
+    {
+        return type==null? null : type.toString(true).replaceAll("Cap#\\d+", "Cap");
+    }
+
+    @Test
+    public void agreesWithDiamondInfer()
+    {
+        Random random = new Random(46);
+        int matched=0, rejected=0, inferred=0, failed=0;
+        for(int n=0; n<20000; n++)
+        {
+            Class<?>[] pair = templates[random.nextInt(templates.length)];
+            DiamondTemplate template = DiamondTemplate.of(pair[0], pair[1]);
+            // mostly of the target class; sometimes of another class
+            Class<?> targetClass = random.nextInt(4)>0? pair[0] : targetClasses1[random.nextInt(targetClasses1.length)];
+            ClassType<?> targetType;
+            try
+            {
+                targetType = randomType(random, targetClass, 2);
+            }
+            catch (AssertionError e) // not well-formed
+            {
+                continue;
+            }
+            String problem = template+" "+targetType;
+            ClassType<?> expected = reference(targetType, pair[1]);
+
+            ClassType<?> fast = template.match(targetType);
+            if(fast!=null)
+            {
+                matched++;
+                assertEquals(problem, expected, fast);
+            }
+            if(!template.mayMatch(targetType))
+            {
+                rejected++;
+                assertNull(problem, expected);
+            }
+
+            assertEquals(problem, normalize(expected), normalize(template.tryInfer(targetType)));
+            try
+            {
+                assertEquals(problem, normalize(expected), normalize(template.infer(targetType)));
+                inferred++;
+            }
+            catch (RuntimeException e)
+            {
+                assertNull(problem, expected);
+                failed++;
+            }
+        }
+        String counts = "matched="+matched+" rejected="+rejected+" inferred="+inferred+" failed="+failed;
+        assertTrue(counts, matched > 1000);
+        assertTrue(counts, rejected > 1000);
+        assertTrue(counts, inferred > matched); // some by full inference
+        assertTrue(counts, failed > rejected);  // some failures are found only by full inference
+    }
+
+    @Test
+    public void examples()
+    {
+        DiamondTemplate swap = DiamondTemplate.of(Map.class, Swap.class);
+        assertEquals(ClassType.of(Swap.class, Integer.class, String.class),
+            swap.match(ClassType.of(Map.class, String.class, Integer.class)));
+
+        DiamondTemplate nest = DiamondTemplate.of(List.class, Nest.class);
+        assertEquals(ClassType.of(Nest.class, String.class),
+            nest.match(ClassType.of(List.class, ClassType.of(List.class, String.class))));
+        assertFalse(nest.mayMatch(ClassType.of(List.class, String.class)));
+
+        DiamondTemplate bounded = DiamondTemplate.of(List.class, Bounded.class);
+        assertFalse(bounded.mayMatch(ClassType.of(List.class, String.class))); // String is not within bound
+        assertNull(bounded.tryInfer(ClassType.of(List.class, String.class)));
+
+        DiamondTemplate free = DiamondTemplate.of(List.class, Free.class);
+        ClassType<?> listString = ClassType.of(List.class, String.class);
+        assertNull(free.match(listString)); // U is solved by full inference
+        assertEquals(ClassType.of(Free.class, String.class, Object.class), free.infer(listString));
+    }
+}
@@ -0,0 +1,139 @@
+package bayou.jtype;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+// isSubTypeNoCapture() must agree with capture conversion, wherever it decides.
+public class SubTypeNoCaptureTest
+{
+    static class NumList<T extends Number> extends ArrayList<T>
+    {
+    }
+    static class StrMap<V> extends HashMap<String, V>
+    {
+    }
+    static class Swap<K, V extends CharSequence> extends HashMap<V, K>
+    {
+    }
+    static class Nested<T> extends ArrayList<List<T>> // not decided without capture
+    {
+    }
+    static class SelfList<T extends Comparable<T>> extends ArrayList<T> // bound not ground; not decided
+    {
+    }
+
+    static final Class<?>[] subClasses = {
+        ArrayList.class, List.class, Collection.class, HashMap.class, Map.class,
+        NumList.class, StrMap.class, Swap.class, Nested.class, SelfList.class
+    };
+    static final Class<?>[] superClasses = {
+        Iterable.class, Collection.class, List.class, ArrayList.class, Map.class, HashMap.class
+    };
+    static final ReferenceType<?>[] groundTypes = {
+        ClassType.OBJECT, ClassType.of(String.class), ClassType.of(CharSequence.class),
+        ClassType.of(Integer.class), ClassType.of(Number.class),
+        ClassType.of(Comparable.class, String.class), ClassType.of(List.class, Integer.class),
+        ClassType.of(List.class, Wildcard.extends_(Number.class)),
+        new ArrayType<Object>(ClassType.of(Integer.class)),
+    };
+
+    static TypeArg randomArg(Random random, boolean wildcards)
+    {
+        ReferenceType<?> type = groundTypes[random.nextInt(groundTypes.length)];
+        switch(wildcards? random.nextInt(4) : 0)
+        {
+            case 1: return Wildcard.unbounded();
+            case 2: return Wildcard.extends_(type);
+            case 3: return Wildcard.super_(type);
+            default: return type;
+        }
+    }
+
+    // null if the random args are not within bounds
+    static ClassType<?> randomType(Random random, Class<?> clazz, boolean wildcards)
+    {
+        TypeArg[] args = new TypeArg[clazz.getTypeParameters().length];
+        for(int i=0; i<args.length; i++)
+            args[i] = randomArg(random, wildcards);
+        try
+        {
+            return ClassType.of(clazz, args);
+        }
+        catch (AssertionError e) // not well-formed
+        {
+            return null;
+        }
+    }
+
+    // the capture path of TypeMath.isSubType(ClassType, ClassType), the only one before isSubTypeNoCapture()
+    static boolean isSubTypeByCapture(ClassType<?> typeA, ClassType<?> typeB)
+    {
+        ClassType<?> typeA3 = TypeMath.getSuperType(TypeMath.doCaptureConversion(typeA), typeB.clazz);
+        if(typeA3.isRawType())
+            return false;
+        for(int i=0; i<typeA3.args.size(); i++)
+            if(!TypeMath.contains(typeB.args.get(i), (ReferenceType<?>)typeA3.args.get(i)))
+                return false;
+        return true;
+    }
+
+    @Test
+    public void agreesWithCapture()
+    {
+        Random random = new Random(42);
+        int tested=0, decided=0, decidedTrue=0;
+        Set<Class<?>> undecidedClasses = new HashSet<Class<?>>();
+        while(tested<20000)
+        {
+            Class<?> classA = subClasses[random.nextInt(subClasses.length)];
+            Class<?> classB = superClasses[random.nextInt(superClasses.length)];
+            if(!classB.isAssignableFrom(classA))
+                continue;
+            ClassType<?> typeA = randomType(random, classA, true);
+            ClassType<?> typeB = randomType(random, classB, random.nextBoolean());
+            if(typeA==null || typeB==null || !typeA.hasWildcard())
+                continue;
+            tested++;
+
+            Boolean result = TypeMath.isSubTypeNoCapture(typeA, typeB);
+            if(result==null)
+            {
+                undecidedClasses.add(classA);
+                continue;
+            }
+            decided++;
+            if(result)
+                decidedTrue++;
+            assertEquals(typeA+" <: "+typeB, isSubTypeByCapture(typeA, typeB), result);
+        }
+        // the common shapes are decided, both ways. a wildcard against a non-wildcard is left to capture.
+        String counts = "tested="+tested+" decided="+decided+" true="+decidedTrue+" undecided="+undecidedClasses;
+        assertTrue(counts, decided > tested/4);
+        assertTrue(counts, decidedTrue > 0 && decidedTrue < decided);
+        assertTrue(counts, undecidedClasses.contains(Nested.class));
+        assertTrue(counts, undecidedClasses.contains(SelfList.class));
+    }
+
+    @Test
+    public void examples()
+    {
+        ClassType<?> numList = ClassType.of(NumList.class, Wildcard.unbounded());
+        assertEquals(Boolean.TRUE, TypeMath.isSubTypeNoCapture(numList, // bound of T is used
+            ClassType.of(List.class, Wildcard.extends_(Number.class))));
+        assertEquals(Boolean.FALSE, TypeMath.isSubTypeNoCapture(numList,
+            ClassType.of(List.class, Wildcard.extends_(Integer.class))));
+
+        ClassType<?> swap = ClassType.of(Swap.class, Wildcard.super_(Integer.class), Wildcard.extends_(String.class));
+        assertEquals(Boolean.TRUE, TypeMath.isSubTypeNoCapture(swap,
+            ClassType.of(Map.class, Wildcard.extends_(CharSequence.class), Wildcard.super_(Integer.class))));
+        assertEquals(Boolean.FALSE, TypeMath.isSubTypeNoCapture(swap,
+            ClassType.of(Map.class, Wildcard.extends_(CharSequence.class), Wildcard.super_(Number.class))));
+
+        ClassType<?> strMap = ClassType.of(StrMap.class, Wildcard.unbounded());
+        assertEquals(Boolean.FALSE, TypeMath.isSubTypeNoCapture(strMap, // String is not in ? super Object
+            ClassType.of(Map.class, Wildcard.super_(Object.class), Wildcard.unbounded())));
+    }
+}
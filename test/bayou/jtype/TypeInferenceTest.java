@@ -0,0 +1,192 @@
+package bayou.jtype;
+
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+// diamond inference problems that branch; or-branches share constraint lists copy-on-write.
+// the expected results are those of the solver before copy-on-write, which copied every list for every branch;
+// except that it threw NullPointerException copying the lists of a solved var, and some of these cases did that.
+public class TypeInferenceTest
+{
+    static class Inter<T extends Number & Comparable<T>> extends ArrayList<T> {}
+    static class Sub<A, B extends A> extends HashMap<A, B> {}
+    static abstract class Chain<A extends List<B>, B extends Comparable<B>> implements Iterable<A> {}
+    static class Ser<T extends CharSequence & Serializable> extends ArrayList<T> {}
+    static abstract class SelfCmp<T extends Comparable<? super T>> implements List<T> {}
+    static class Multi<K extends Number & Comparable<K>, V extends K> extends HashMap<K, List<V>> {}
+    static class Same<T> extends HashMap<T, T> {}
+    static class Three<T, U, V> {}
+
+    // generic class, target type, result. "+other" if there may be other solutions.
+    // class names are abbreviated; captured vars are shown as Cap(wildcard).
+    static final String[][] branching = {
+        { "Chain", "Iterable<Inter<? extends Comparable<? extends CharSequence>>>",
+            "Chain<Inter<? extends Comparable<? extends CharSequence>>, Cap(? extends Comparable<? extends CharSequence>)>" },
+        { "Chain", "Iterable<Inter<? extends Comparable<?>>>",
+            "Chain<Inter<? extends Comparable<?>>, Cap(? extends Comparable<?>)>" },
+        { "Chain", "Iterable<Inter<? extends Number>>",
+            "Chain<Inter<? extends Number>, Cap(? extends Number)>" },
+        { "Chain", "Iterable<Inter<? extends List<Serializable>>>",
+            "Chain<Inter<? extends List<Serializable>>, Cap(? extends List<Serializable>)>" },
+        { "Chain", "Iterable<Inter<?>>",
+            "Chain<Inter<?>, Cap(?)>" },
+        { "Chain", "Iterable<SelfCmp<? extends Comparable<?>>>",
+            "FAIL" },
+        { "Chain", "Iterable<SelfCmp<? extends Map<? extends CharSequence, Integer>>>",
+            "FAIL" },
+        { "Chain", "Iterable<SelfCmp<?>>",
+            "FAIL" },
+        { "Chain", "Iterable<Ser<? extends Same<? super Object>>>",
+            "FAIL" },
+        { "Chain", "Iterable<Ser<? extends List<? extends String>>>",
+            "FAIL" },
+        { "Chain", "Iterable<List<? extends Comparable<?>>>",
+            "FAIL" },
+        { "Multi", "HashMap<?, List<? super SelfCmp<? extends Number>>>",
+            "FAIL" },
+        { "Multi", "Map<Long, ? super Ser<? extends Multi<?, ? extends Long>>>",
+            "FAIL" },
+        { "Same", "HashMap<Inter<? extends String>, ? extends Collection<? extends CharSequence>>",
+            "Same<Inter<? extends String>>" },
+        { "Same", "HashMap<Inter<?>, ? super Inter<?>>",
+            "Same<Inter<?>> +other" },
+        { "Same", "HashMap<Ser<?>, ? extends Ser<? extends Map<?, CharSequence>>>",
+            "FAIL" },
+        { "Same", "Map<? extends Collection<?>, Inter<? extends CharSequence>>",
+            "Same<Inter<? extends CharSequence>> +other" },
+        { "Same", "Map<? super Ser<?>, Collection<?>>",
+            "Same<Collection<?>> +other" },
+        { "Same", "Map<Inter<? extends Collection<? extends Serializable>>, Inter<?>>",
+            "FAIL" },
+        { "Same", "Map<Inter<?>, ? extends Iterable<? extends CharSequence>>",
+            "FAIL" },
+        { "Same", "Map<Multi<? extends List<? extends Integer>, ? extends Long>, Multi<?, ?>>",
+            "FAIL" },
+        { "Same", "Map<SelfCmp<? extends Comparable<? extends String>>, SelfCmp<? extends Same<?>>>",
+            "FAIL" },
+        { "Same", "Map<Collection<?>, ? super Ser<?>>",
+            "Same<Collection<?>> +other" },
+        { "Sub", "Sub<Iterable<?>, SelfCmp<? extends Collection<?>>>",
+            "Sub<Iterable<?>, SelfCmp<? extends Collection<?>>> +other" },
+        { "Sub", "HashMap<List<?>, Inter<? extends CharSequence>>",
+            "Sub<List<?>, Inter<? extends CharSequence>> +other" },
+        { "Sub", "Map<Iterable<? extends Sub<? super Serializable, Integer>>, SelfCmp<? extends List<Number>>>",
+            "FAIL" },
+        { "Sub", "Map<Iterable<? extends List<?>>, Ser<? extends List<Serializable>>>",
+            "Sub<Iterable<? extends List<?>>, Ser<? extends List<Serializable>>>" },
+        { "Sub", "Map<Collection<?>, Ser<?>>",
+            "Sub<Collection<?>, Ser<?>> +other" },
+    };
+
+    static final Pattern NAME = Pattern.compile("[A-Z]\\w*");
+    static final String[] PREFIXES = { TypeInferenceTest.class.getName()+"$", "java.util.", "java.lang.", "java.io." };
+
+    static String expand(String abbreviated) throws Exception
+    {
+        StringBuffer sb = new StringBuffer();
+        Matcher matcher = NAME.matcher(abbreviated);
+        while(matcher.find())
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(fullName(matcher.group())));
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+    static String fullName(String simpleName) throws ClassNotFoundException
+    {
+        for(String prefix : PREFIXES)
+        {
+            try
+            {
+                return Class.forName(prefix+simpleName).getName();
+            }
+            catch (ClassNotFoundException e)
+            {
+                // try next
+            }
+        }
+        throw new ClassNotFoundException(simpleName);
+    }
+
+    static String abbreviate(String full)
+    {
+        for(String prefix : PREFIXES)
+            full = full.replace(prefix, "");
+        return full.replaceAll("Cap#\\d+", "Cap").replaceAll("\\(@[\\w.$]+\\)", "");
+    }
+
+    static int countBranches(TypeInference infer)
+    {
+        if(infer.orBranches==null)
+            return 0;
+        int n = infer.orBranches.size();
+        for(TypeInference branch : infer.orBranches)
+            n += countBranches(branch);
+        return n;
+    }
+
+    @Test
+    public void branchingCases() throws Exception
+    {
+        ClassLoader loader = getClass().getClassLoader();
+        for(String[] c : branching)
+        {
+            String problem = c[0]+" <: "+c[1];
+            Class<?> clazz = Class.forName(expand(c[0]));
+            ClassType<?> target = ClassType.parse(expand(c[1]), loader);
+            TypeInference infer = TypeInference.diamondInfer0(target, clazz);
+            assertTrue(problem, countBranches(infer)>0);
+            assertFalse(problem, infer.aborted);
+
+            String result = "FAIL";
+            if(infer.oneSolutionIsFound)
+                result = abbreviate(((ClassType<?>)TypeInference.diamondResult(infer, clazz)).toString(true));
+            if(infer.mayHaveOtherSolutions)
+                result += " +other";
+            assertEquals(problem, c[2], result);
+        }
+    }
+
+    // a branch modifies var constraints that it shares with the parent and the other branches.
+    // branch 1 solves T and U, substitutes T in constraints of U and V, then fails; branch 2 must not see any of it.
+    @Test
+    public void branchesDoNotShareChanges() throws Exception
+    {
+        List<TypeVar<?>> vars = ClassType.withTypeVars(Three.class).getTypeVars();
+        TypeVar<?> T = vars.get(0), U = vars.get(1), V = vars.get(2);
+        TypeInference infer = new TypeInference(vars, false);
+        TypeInference.VarConstraint vcU = infer.varConstraint(U), vcV = infer.varConstraint(V);
+
+        ClassType<?> listT = ClassType.of(List.class, T);
+        ClassType<?> arrayListString = ClassType.of(ArrayList.class, String.class);
+        infer.reduceConstraint(new TypeInference.Constraint(null, U, listT, -1));          // U <: List<T>
+        infer.reduceConstraint(new TypeInference.Constraint(null, U, arrayListString, 0)); // U = ArrayList<String>
+        infer.reduceConstraint(new TypeInference.Constraint(null, V, listT, -1));          // V <: List<T>
+        TypeInference.Constraint upper = vcU.uppers.get(0), equal = vcU.equals.get(0), upperV = vcV.uppers.get(0);
+
+        infer.addOrBranch(null, T, ClassType.of(Integer.class), 0); // T = Integer
+        infer.addOrBranch(null, T, ClassType.of(String.class), 0);  // T = String
+        infer.solveOrBranches();
+
+        TypeInference branch1 = infer.orBranches.get(0);
+        assertFalse(branch1.oneSolutionIsFound);
+        assertEquals("String = Integer", branch1.unsatisfied.toString(false)); // from ArrayList<String> <: List<Integer>
+
+        assertTrue(infer.oneSolutionIsFound);
+        assertTrue(infer.mayHaveOtherSolutions); // V is chosen within its bound
+        assertEquals(Arrays.asList(ClassType.of(String.class), arrayListString, ClassType.of(List.class, String.class)),
+            infer.solutions);
+
+        // the parent's lists are intact
+        assertEquals(Collections.singletonList(upper), vcU.uppers);
+        assertEquals(Collections.singletonList(equal), vcU.equals);
+        assertSame(listT, upper.rhs);
+        assertTrue(vcU.lowers.isEmpty());
+        assertEquals(Collections.singletonList(upperV), vcV.uppers);
+        assertTrue(infer.varConstraint(T).equals.isEmpty());
+    }
+}
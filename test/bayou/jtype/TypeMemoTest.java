@@ -0,0 +1,140 @@
+package bayou.jtype;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TypeMemoTest
+{
+    public static class Payload<T>
+    {
+        public Map<String, List<T>> convert(List<? extends T> list, T[] array){ return null; }
+    }
+
+    // a copy of Payload, in a new class loader that is not ours
+    static Class<?> loadPayload() throws Exception
+    {
+        URL classes = Payload.class.getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader loader = new URLClassLoader(new URL[]{classes}, null);
+        Class<?> clazz = loader.loadClass(Payload.class.getName());
+        assertNotSame(Payload.class, clazz);
+        return clazz;
+    }
+
+    @Test
+    public void evictQuarters()
+    {
+        TypeMemo<Integer, String> memo = new TypeMemo<Integer, String>("test", 64);
+        for(int i=0; i<64; i++)
+            memo.global.put(i, "v");
+        assertEquals(64, memo.global.size.get());
+
+        memo.global.put(64, "v");
+        int size = memo.global.size.get();
+        assertEquals(size, memo.global.map.size());
+        assertTrue("size="+size, size > 0 && size <= 48);
+    }
+
+    @Test
+    public void home() throws Exception
+    {
+        ClassType<?> ours = ClassType.of(List.class, String.class);
+        assertSame(Object.class, TypeMemo.home(ours));
+
+        Class<?> theirs = loadPayload();
+        ClassType<?> payload = ClassType.of(theirs, TypeArg.class.cast(ClassType.of(String.class)));
+        assertSame(theirs, TypeMemo.home(payload));
+        assertSame(theirs, TypeMemo.home(ClassType.of(List.class, TypeArg.class.cast(payload))));
+        assertSame(theirs, TypeMemo.home(new TypeMemo.Pair(0, ours, payload)));
+
+        Class<?> unrelated = loadPayload();
+        assertSame(TypeMemo.Mixed.class, TypeMemo.home(new TypeMemo.Pair(0, payload, unrelated)));
+    }
+
+    @Test
+    public void foreignTypesInPerClassSegment() throws Exception
+    {
+        Class<?> clazz = loadPayload();
+        ReferenceType<?> a = ClassType.of(clazz, String.class);
+        ReferenceType<?> b = ClassType.of(clazz, Wildcard.extends_(CharSequence.class));
+        assertTrue(TypeMath.isSubType(a, b));
+        TypeMemo.Pair ab = new TypeMemo.Pair(TypeMath.OP_SUBTYPE, a, b);
+        assertNull(TypeMath.boolMemo.global.map.get(ab));
+        assertEquals(Boolean.TRUE, TypeMath.boolMemo.perClass.get(clazz).map.get(ab));
+
+        // a relation on system classes is in the global segment
+        ReferenceType<?> c = ClassType.of(ArrayList.class, String.class);
+        ReferenceType<?> d = ClassType.of(List.class, Wildcard.extends_(CharSequence.class));
+        assertTrue(TypeMath.isSubType(c, d));
+        assertEquals(Boolean.TRUE, TypeMath.boolMemo.global.map.get(new TypeMemo.Pair(TypeMath.OP_SUBTYPE, c, d)));
+    }
+
+    @Test
+    public void memoDoesNotPinClassLoader() throws Exception
+    {
+        WeakReference<ClassLoader> loaderRef = subTypeOfPayload();
+        for(int i=0; i<100 && loaderRef.get()!=null; i++)
+        {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("class loader is not collected", loaderRef.get());
+    }
+    static WeakReference<ClassLoader> subTypeOfPayload() throws Exception
+    {
+        Class<?> clazz = loadPayload();
+        ReferenceType<?> a = ClassType.of(clazz, String.class);
+        ReferenceType<?> b = ClassType.of(clazz, Wildcard.extends_(CharSequence.class));
+        assertTrue(TypeMath.isSubType(a, b));
+        return new WeakReference<ClassLoader>(clazz.getClassLoader());
+    }
+
+    @Test
+    public void conversionHitsSurviveGc() throws Exception
+    {
+        List<JavaType<?>> types = convertMethodTypes(Payload.class);
+        for(int i=0; i<3; i++)
+            System.gc();
+        long misses = TypeMath.conversionMemo.misses.get();
+        List<JavaType<?>> types2 = convertMethodTypes(Payload.class); // a new copy of the Method
+        assertEquals(types, types2);
+        for(int i=0; i<types.size(); i++)
+            assertSame(types.get(i), types2.get(i));
+        assertEquals(misses, TypeMath.conversionMemo.misses.get());
+    }
+    static List<JavaType<?>> convertMethodTypes(Class<?> clazz) throws Exception
+    {
+        Method method = clazz.getMethod("convert", List.class, Object[].class);
+        ArrayList<JavaType<?>> types = new ArrayList<JavaType<?>>(JavaType.convertAll(method.getGenericParameterTypes()));
+        types.add(JavaType.convertFrom(method.getGenericReturnType()));
+        return types;
+    }
+
+    @Test
+    public void conversionDoesNotPinClassLoader() throws Exception
+    {
+        WeakReference<ClassLoader> loaderRef = convertPayload();
+        for(int i=0; i<100 && loaderRef.get()!=null; i++)
+        {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("class loader is not collected", loaderRef.get());
+    }
+    static WeakReference<ClassLoader> convertPayload() throws Exception
+    {
+        Class<?> clazz = loadPayload();
+        convertMethodTypes(clazz);
+        assertNull(TypeMath.conversionMemo.global.map.get(clazz.getMethod("convert", List.class, Object[].class)
+            .getGenericParameterTypes()[0]));
+        return new WeakReference<ClassLoader>(clazz.getClassLoader());
+    }
+}
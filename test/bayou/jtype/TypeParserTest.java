@@ -0,0 +1,50 @@
+package bayou.jtype;
+
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TypeParserTest
+{
+    public static class Outer<T>
+    {
+        public static class Nested<S>
+        {
+        }
+
+        public class Inner<S>
+        {
+            public class Innermost<R>
+            {
+            }
+        }
+    }
+
+    // generic types of these fields are parsed back from toString(true)
+    public static class Fields
+    {
+        public Map<String, ? extends List<int[]>> map;
+        public Outer.Nested<Outer<String>[]> nested;
+        public Outer<String>.Inner<List<? super Integer>> inner;
+        public Outer<Long>.Inner<String>.Innermost<Map<?, Outer.Nested<char[][]>>> innermost;
+        public List<Outer<Double>.Inner<Outer.Nested<?>>> innerArg;
+    }
+
+    @Test
+    public void toStringRoundTrip() throws Exception
+    {
+        ClassLoader loader = getClass().getClassLoader();
+        for(java.lang.reflect.Field field : Fields.class.getFields())
+        {
+            Type jlrType = field.getGenericType();
+            ClassType<?> type = (ClassType<?>)JavaType.convertFrom(jlrType);
+            String string = type.toString(true);
+            assertEquals(string, type, ClassType.parse(string, loader));
+            assertEquals(string, type, ClassType.parse(string.replace('$', '.'), loader));
+        }
+    }
+}
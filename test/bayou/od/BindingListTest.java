@@ -0,0 +1,106 @@
+package bayou.od;
+
+import bayou.jtype.ClassType;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class BindingListTest
+{
+    public static class Payload
+    {
+    }
+
+    static class TestBinding implements OD.FilteredBinding
+    {
+        final Set<? extends Class> appClasses;
+        final OD.Predicate<Class> filter;
+
+        TestBinding(Set<? extends Class> appClasses, OD.Predicate<Class> filter)
+        {
+            this.appClasses = appClasses;
+            this.filter = filter;
+        }
+
+        public <T> OD.Supplier<? extends T> map(ClassType<T> type, Object... tags){ return null; }
+        public Set<? extends Class> getApplicableClasses(){ return appClasses; }
+        public OD.Predicate<Class> getApplicableClassFilter(){ return filter; }
+    }
+
+    static List<OD.Binding> lookup(BindingList list, Class clazz)
+    {
+        list.testFilters(clazz);
+        list.index(clazz);
+        return list.forClass(clazz);
+    }
+
+    @Test
+    public void onlyAcceptedClassesAreIndexed()
+    {
+        OD.Binding wild = new TestBinding(null, null);
+        OD.Binding filtered = new TestBinding(null, OD.subTypesOf(CharSequence.class));
+        OD.Binding fixed = new TestBinding(Collections.singleton(Integer.class), null);
+        BindingList list = new BindingList();
+        list.add(wild);
+        list.add(fixed);
+        list.add(filtered);
+
+        assertEquals(list(wild, filtered), lookup(list, String.class));
+        assertEquals(list(wild, fixed), lookup(list, Integer.class));
+        assertEquals(list(wild), lookup(list, Long.class));
+        assertEquals(list(wild), lookup(list, Double.class));
+
+        assertTrue(list.classBindings.containsKey(String.class));
+        assertTrue(list.classBindings.containsKey(Integer.class));
+        assertFalse(list.classBindings.containsKey(Long.class));
+        assertFalse(list.classBindings.containsKey(Double.class));
+
+        // a new filter is tested for classes that are not indexed, on their next lookup
+        OD.Binding numbers = new TestBinding(null, OD.subTypesOf(Number.class));
+        list.add(numbers);
+        assertEquals(list(wild, numbers), lookup(list, Long.class));
+        assertTrue(list.classBindings.containsKey(Long.class));
+
+        assertTrue(list.remove(numbers));
+        assertFalse(list.classBindings.containsKey(Long.class));
+        assertEquals(list(wild), lookup(list, Long.class));
+        assertEquals(list(wild, filtered), lookup(list, String.class));
+    }
+
+    static List<OD.Binding> list(OD.Binding... bindings)
+    {
+        return Arrays.asList(bindings);
+    }
+
+    @Test
+    public void filterResultsDoNotPinClasses() throws Exception
+    {
+        OD.Binding filtered = new TestBinding(null, OD.subTypesOf(CharSequence.class));
+        BindingList list = new BindingList();
+        list.add(filtered);
+
+        WeakReference<ClassLoader> loaderRef = lookupForeignClass(list);
+        for(int i=0; i<100 && loaderRef.get()!=null; i++)
+        {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("class loader is not collected", loaderRef.get());
+    }
+    static WeakReference<ClassLoader> lookupForeignClass(BindingList list) throws Exception
+    {
+        URL classes = BindingListTest.class.getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader loader = new URLClassLoader(new URL[]{classes}, null);
+        Class<?> clazz = loader.loadClass(Payload.class.getName());
+        assertEquals(0, lookup(list, clazz).size());
+        return new WeakReference<ClassLoader>(loader);
+    }
+}
@@ -0,0 +1,64 @@
+package bayou.od;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EagerBindingTest
+{
+    public static class Foo
+    {
+    }
+
+    static boolean isEager(OD.Binding binding)
+    {
+        synchronized (WarmUp.eagerBindings)
+        {
+            return WarmUp.eagerBindings.containsKey(binding);
+        }
+    }
+
+    @Test
+    public void localCannotBeEager()
+    {
+        try
+        {
+            OD.Local.bind(Foo.class).eagerly();
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+        OD.batch().bind(Foo.class).eagerly();
+        OD.binding(Foo.class).eagerly();
+    }
+
+    // one test; sealing is permanent
+    @Test
+    public void eagerOnlyWhileBound()
+    {
+        OD.Binding b1 = OD.bind(Foo.class).tags("1").eagerly().to(new Foo());
+        assertTrue(isEager(b1));
+        assertTrue(OD.unbind(b1));
+        assertFalse(isEager(b1));
+
+        OD.Binding b2 = OD.bind(Foo.class).tags("2").eagerly().to(new Foo());
+        OD.Binding b3 = OD.binding(Foo.class).tags("2").eagerly().to(new Foo());
+        assertTrue(OD.replace(b2, b3));
+        assertFalse(isEager(b2));
+        assertTrue(isEager(b3));
+
+        OD.seal();
+        int size = WarmUp.eagerBindings.size();
+        try
+        {
+            OD.bind(Foo.class).tags("3").eagerly().to(new Foo());
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            assertEquals(size, WarmUp.eagerBindings.size()); // not registered
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package bayou.od;
+
+import bayou.jtype.ClassType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InjectionTest
+{
+    public static class Bar
+    {
+    }
+
+    public interface Foo
+    {
+        Bar bar();
+    }
+
+    public static class FooImpl implements Foo
+    {
+        final Bar bar;
+
+        public FooImpl(Bar bar)
+        {
+            this.bar = bar;
+        }
+
+        public Bar bar(){ return bar; }
+    }
+
+    public static class FooSupplier implements OD.Supplier<Foo>
+    {
+        static int instances;
+
+        final Bar bar;
+
+        public FooSupplier(Bar bar)
+        {
+            this.bar = bar;
+            instances++;
+        }
+
+        public Foo get()
+        {
+            return new FooImpl(bar);
+        }
+    }
+
+    @Test
+    public void implClass_dependencyBoundLaterInBatch()
+    {
+        OD.BindingBatch batch = OD.batch();
+        batch.bind(Foo.class).tags("impl").to(FooImpl.class);
+        Bar bar = new Bar();
+        batch.bind(Bar.class).to(bar);
+        batch.commit();
+
+        Foo foo = OD.get(Foo.class, "impl");
+        assertSame(bar, foo.bar());
+        assertNotSame(foo, OD.get(Foo.class, "impl"));
+    }
+
+    @Test
+    public void supplierClass_dependencyBoundLaterInBatch()
+    {
+        OD.BindingBatch batch = OD.batch();
+        batch.bind(Foo.class).tags("supplier")._toSupplierClass(FooSupplier.class);
+        Bar bar = new Bar();
+        batch.bind(Bar.class).tags("supplier").to(bar);
+        List<OD.Binding> bindings = batch.commit();
+        assertEquals(0, FooSupplier.instances); // not created at bind time
+
+        try
+        {
+            OD.get(Foo.class, "supplier"); // Bar is bound with tags; the dependency is OD.get(Bar.class)
+            fail();
+        }
+        catch (OD.NotFoundException e)
+        {
+            assertEquals(0, FooSupplier.instances);
+        }
+
+        OD.bind(Bar.class).to(bar);
+        assertSame(bar, OD.get(Foo.class, "supplier").bar());
+        assertSame(bar, OD.get(Foo.class, "supplier").bar());
+        assertEquals(1, FooSupplier.instances); // created once, on the first successful get()
+
+        OD.unbind(bindings.get(0));
+    }
+
+    public static class Baz
+    {
+        final Bar bar;
+        final List<Bar> bars;
+
+        public Baz(Bar bar, List<Bar> bars)
+        {
+            this.bar = bar;
+            this.bars = bars;
+        }
+
+        // as generated by od-processor for @GenerateFactory
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public static final class ODFactory extends GeneratedFactory
+        {
+            static int instances;
+
+            public ODFactory()
+            {
+                super(Baz.class, new Class[]{Bar.class, List.class}, new int[]{-1, -1},
+                    new String[]{"bayou.od.InjectionTest$Bar", "java.util.List<bayou.od.InjectionTest$Bar>"});
+            }
+
+            protected Object newInstance(Object[] args) throws Exception
+            {
+                instances++;
+                return new Baz((Bar)args[0], (List)args[1]);
+            }
+        }
+    }
+
+    @Test
+    public void generatedFactory_injecting()
+    {
+        TypeArgConstructor tac = TypeArgConstructor.of(Baz.class);
+        assertNotNull(tac.factory);
+        assertEquals(ClassType.of(Bar.class), tac.argDep[0]);
+        assertEquals(new ClassType<List<Bar>>(){}, tac.argDep[1]);
+
+        Bar bar = new Bar();
+        List<Bar> bars = Arrays.asList(bar);
+        OD.Binding binding = OD.bind(Baz.class).tags("generated").to(Baz.class);
+        OD.Binding barBinding = OD.bind(Bar.class).to(bar);
+        OD.Binding barsBinding = OD.bind(new ClassType<List<Bar>>(){}).to(bars);
+
+        Baz baz = OD.get(Baz.class, "generated");
+        assertSame(bar, baz.bar);
+        assertSame(bars, baz.bars);
+        assertNotSame(baz, OD.get(Baz.class, "generated"));
+        assertEquals(2, Baz.ODFactory.instances);
+
+        OD.unbind(binding);
+        OD.unbind(barBinding);
+        OD.unbind(barsBinding);
+    }
+}
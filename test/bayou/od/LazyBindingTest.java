@@ -0,0 +1,71 @@
+package bayou.od;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LazyBindingTest
+{
+    public interface Foo
+    {
+        String name();
+    }
+
+    public static class FooImpl implements Foo
+    {
+        static int instances;
+
+        public FooImpl()
+        {
+            instances++;
+        }
+
+        public String name(){ return "foo"; }
+
+        public String toString(){ return "FooImpl"; }
+    }
+
+    // a non-public interface; its proxy class is not public
+    interface Bar
+    {
+        int id();
+    }
+
+    static class BarImpl implements Bar
+    {
+        public int id(){ return 42; }
+    }
+
+    @Test
+    public void objectMethodsDontCreateTarget()
+    {
+        OD.bind(Foo.class).lazily().to(FooImpl.class);
+
+        Foo foo = OD.get(Foo.class);
+        Foo foo2 = OD.get(Foo.class);
+        assertNotSame(foo, foo2);
+        assertTrue(foo.equals(foo));
+        assertFalse(foo.equals(foo2));
+        assertEquals(System.identityHashCode(foo), foo.hashCode());
+        assertTrue(foo.toString(), foo.toString().startsWith("lazy "+Foo.class.getName()+"@"));
+        assertEquals(0, FooImpl.instances);
+
+        assertEquals("foo", foo.name());
+        assertEquals(1, FooImpl.instances);
+        assertEquals("FooImpl", foo.toString()); // forwarded once the target is created
+        assertEquals(1, FooImpl.instances);
+    }
+
+    @Test
+    public void nonPublicInterface()
+    {
+        OD.bind(Bar.class).lazily().to(new OD.Supplier<Bar>()
+        {
+            public Bar get()
+            {
+                return new BarImpl();
+            }
+        });
+        assertEquals(42, OD.get(Bar.class).id());
+    }
+}
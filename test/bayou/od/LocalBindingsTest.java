@@ -0,0 +1,169 @@
+package bayou.od;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class LocalBindingsTest
+{
+    public static class Foo
+    {
+        final String name;
+
+        public Foo(String name)
+        {
+            this.name = name;
+        }
+    }
+
+    @Test
+    public void threadsBoundDropsToZero()
+    {
+        assertEquals(0, LocalBindings.threadsBound.get());
+
+        OD.Local.bind(Foo.class).to(new Foo("local"));
+        assertEquals(1, LocalBindings.threadsBound.get());
+        assertEquals("local", OD.get(Foo.class).name);
+
+        OD.Local.setBindings(null);
+        assertEquals(0, LocalBindings.threadsBound.get());
+        assertNull(LocalBindings.localBindings_TL.get());
+    }
+
+    @Test
+    public void wrappedTasksSeeCapturedBindings() throws Exception
+    {
+        final int N = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try
+        {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for(int i=0; i<N; i++)
+            {
+                OD.Local.setBindings(null);
+                OD.Local.bind(Foo.class).to(new Foo("task"+i));
+                ExecutorService wrapped = OD.Local.wrap(pool);
+                results.add(wrapped.submit(new Callable<String>()
+                {
+                    public String call() throws Exception
+                    {
+                        String name = OD.get(Foo.class).name;
+                        OD.Local.bind(Foo.class).to(new Foo("changed")); // undone when the task ends
+                        return name;
+                    }
+                }));
+            }
+            for(int i=0; i<N; i++)
+                assertEquals("task"+i, results.get(i).get());
+        }
+        finally
+        {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        // pool threads restored their previous (null) bindings; only this thread has some
+        assertEquals(1, LocalBindings.threadsBound.get());
+        OD.Local.setBindings(null);
+        assertEquals(0, LocalBindings.threadsBound.get());
+    }
+
+    @Test
+    public void concurrentLocalBindingsAreIsolated() throws Exception
+    {
+        final int N = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(N);
+        ExecutorService pool = Executors.newFixedThreadPool(N);
+        try
+        {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for(int i=0; i<N; i++)
+            {
+                final String name = "thread"+i;
+                results.add(pool.submit(new Callable<Boolean>()
+                {
+                    public Boolean call() throws Exception
+                    {
+                        barrier.await();
+                        for(int j=0; j<1000; j++)
+                        {
+                            OD.Local.bind(Foo.class).to(new Foo(name));
+                            if(!name.equals(OD.get(Foo.class).name))
+                                return false;
+                            OD.Local.setBindings(null);
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for(Future<Boolean> result : results)
+                assertTrue(result.get());
+        }
+        finally
+        {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertEquals(0, LocalBindings.threadsBound.get());
+    }
+
+    @Test
+    public void concurrentSubmittersShareWrappedExecutor() throws Exception
+    {
+        final int N = 4, TASKS = 200;
+        final ExecutorService workers = Executors.newFixedThreadPool(4);
+        ExecutorService submitters = Executors.newFixedThreadPool(N);
+        final CyclicBarrier barrier = new CyclicBarrier(N);
+        try
+        {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for(int i=0; i<N; i++)
+            {
+                final String name = "submitter"+i;
+                results.add(submitters.submit(new Callable<Boolean>()
+                {
+                    public Boolean call() throws Exception
+                    {
+                        OD.Local.bind(Foo.class).to(new Foo(name));
+                        assertSame(LocalBindings.capture(), LocalBindings.capture()); // one snapshot, reused
+                        ExecutorService wrapped = OD.Local.wrap(workers);
+                        barrier.await();
+                        List<Future<String>> names = new ArrayList<Future<String>>();
+                        for(int j=0; j<TASKS; j++)
+                            names.add(wrapped.submit(new Callable<String>()
+                            {
+                                public String call() throws Exception
+                                {
+                                    return OD.get(Foo.class).name;
+                                }
+                            }));
+                        try
+                        {
+                            for(Future<String> f : names)
+                                if(!name.equals(f.get()))
+                                    return false;
+                            return true;
+                        }
+                        finally
+                        {
+                            OD.Local.setBindings(null);
+                        }
+                    }
+                }));
+            }
+            for(Future<Boolean> result : results)
+                assertTrue(result.get());
+        }
+        finally
+        {
+            submitters.shutdown();
+            workers.shutdown();
+            assertTrue(submitters.awaitTermination(10, TimeUnit.SECONDS));
+            assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertEquals(0, LocalBindings.threadsBound.get()); // workers restored their (null) bindings
+    }
+}
@@ -0,0 +1,109 @@
+package bayou.od;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PoolTest
+{
+    public static class Buffer
+    {
+        final AtomicBoolean leased = new AtomicBoolean();
+    }
+
+    @Test
+    public void concurrentLeaseRelease() throws Exception
+    {
+        final int N = 8, LEASES = 20000, MAX_SIZE = 4;
+        final AtomicInteger created = new AtomicInteger();
+        final OD.Pool<Buffer> pool = OD.bind(Buffer.class).pooled(MAX_SIZE, new OD.Supplier<Buffer>()
+        {
+            public Buffer get()
+            {
+                created.incrementAndGet();
+                return new Buffer();
+            }
+        }, null);
+
+        final CyclicBarrier barrier = new CyclicBarrier(N);
+        ExecutorService threads = Executors.newFixedThreadPool(N);
+        try
+        {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for(int i=0; i<N; i++)
+            {
+                final boolean viaGet = (i%2==0);
+                results.add(threads.submit(new Callable<Boolean>()
+                {
+                    public Boolean call() throws Exception
+                    {
+                        barrier.await();
+                        for(int j=0; j<LEASES; j++)
+                        {
+                            Buffer buffer = viaGet? OD.get(Buffer.class) : pool.lease();
+                            if(!buffer.leased.compareAndSet(false, true))
+                                return false; // leased to two threads at once
+                            buffer.leased.set(false);
+                            pool.release(buffer);
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for(Future<Boolean> result : results)
+                assertTrue(result.get());
+        }
+        finally
+        {
+            threads.shutdown();
+            assertTrue(threads.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        // every object created is either idle, or was discarded; none is lost or duplicated
+        assertEquals(N*LEASES, pool.getLeaseCount());
+        assertEquals(created.get(), pool.getIdleCount() + pool.getDiscardCount());
+        assertTrue(pool.getIdleCount() <= MAX_SIZE);
+        assertEquals(N*LEASES - created.get(), pool.getHitCount());
+
+        Set<Buffer> idle = Collections.newSetFromMap(new IdentityHashMap<Buffer, Boolean>());
+        for(int i=pool.getIdleCount(); i>0; i--)
+            assertTrue(idle.add(pool.lease()));
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void resetRejects()
+    {
+        OD.Pool<StringBuilder> pool = OD.bind(StringBuilder.class).pooled(2, new OD.Supplier<StringBuilder>()
+        {
+            public StringBuilder get()
+            {
+                return new StringBuilder();
+            }
+        }, new OD.Predicate<StringBuilder>()
+        {
+            public boolean test(StringBuilder sb)
+            {
+                if(sb.length()>16)
+                    return false; // too big to keep
+                sb.setLength(0);
+                return true;
+            }
+        });
+
+        StringBuilder small = pool.lease().append("abc");
+        StringBuilder big = pool.lease().append("0123456789abcdefghij");
+        pool.release(small);
+        pool.release(big);
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(1, pool.getDiscardCount());
+        StringBuilder again = pool.lease();
+        assertSame(small, again);
+        assertEquals(0, again.length());
+    }
+}
@@ -0,0 +1,158 @@
+package bayou.od;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ReplaceRaceTest
+{
+    public static class Foo
+    {
+        final int version;
+
+        public Foo(int version)
+        {
+            this.version = version;
+        }
+    }
+
+    public static class Bar
+    {
+    }
+
+    // after replace() returns, no thread gets the old supplier from the cache
+    @Test
+    public void replaceWhileGetting() throws Exception
+    {
+        final int READERS = 4, VERSIONS = 2000;
+        final AtomicInteger published = new AtomicInteger(0);
+        final AtomicBoolean done = new AtomicBoolean();
+        final CyclicBarrier barrier = new CyclicBarrier(READERS + 2);
+        OD.Binding current = OD.bind(Foo.class).tags("x").to(new Foo(0));
+
+        ExecutorService threads = Executors.newFixedThreadPool(READERS + 1);
+        try
+        {
+            List<Future<Boolean>> readers = new ArrayList<Future<Boolean>>();
+            for(int r=0; r<READERS; r++)
+            {
+                readers.add(threads.submit(new Callable<Boolean>()
+                {
+                    public Boolean call() throws Exception
+                    {
+                        barrier.await();
+                        while(!done.get())
+                        {
+                            int min = published.get();
+                            if(OD.get(Foo.class, "x").version < min)
+                                return false; // stale
+                        }
+                        return true;
+                    }
+                }));
+            }
+            // unrelated bindings, added and removed concurrently, bump the version and evict other cache entries
+            Future<Boolean> churn = threads.submit(new Callable<Boolean>()
+            {
+                public Boolean call() throws Exception
+                {
+                    barrier.await();
+                    for(int i=0; !done.get(); i++)
+                    {
+                        OD.Binding bar = OD.bind(Bar.class).tags("bar"+i).to(new Bar());
+                        OD.get(Bar.class, "bar"+i);
+                        if(!OD.unbind(bar))
+                            return false;
+                    }
+                    return true;
+                }
+            });
+
+            barrier.await();
+            for(int v=1; v<=VERSIONS; v++)
+            {
+                OD.Binding next = OD.binding(Foo.class).tags("x").to(new Foo(v));
+                assertTrue(OD.replace(current, next));
+                assertFalse(OD.replace(current, next)); // already replaced
+                current = next;
+                published.set(v);
+            }
+            done.set(true);
+
+            for(Future<Boolean> reader : readers)
+                assertTrue(reader.get());
+            assertTrue(churn.get());
+        }
+        finally
+        {
+            threads.shutdown();
+            assertTrue(threads.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertEquals(VERSIONS, OD.get(Foo.class, "x").version);
+    }
+
+    // of concurrent replacements of the same binding, exactly one succeeds
+    @Test
+    public void replaceSameBinding() throws Exception
+    {
+        final int N = 4, ROUNDS = 500;
+        final CyclicBarrier barrier = new CyclicBarrier(N);
+        final OD.Binding[] current = { OD.bind(Foo.class).tags("y").to(new Foo(-1)) };
+        final AtomicInteger winner = new AtomicInteger();
+
+        ExecutorService threads = Executors.newFixedThreadPool(N);
+        try
+        {
+            for(int round=0; round<ROUNDS; round++)
+            {
+                final OD.Binding old = current[0];
+                winner.set(-1);
+                List<Future<OD.Binding>> results = new ArrayList<Future<OD.Binding>>();
+                for(int i=0; i<N; i++)
+                {
+                    final int id = i;
+                    results.add(threads.submit(new Callable<OD.Binding>()
+                    {
+                        public OD.Binding call() throws Exception
+                        {
+                            OD.Binding next = OD.binding(Foo.class).tags("y").to(new Foo(id));
+                            barrier.await();
+                            if(!OD.replace(old, next))
+                                return null;
+                            assertTrue(winner.compareAndSet(-1, id));
+                            return next;
+                        }
+                    }));
+                }
+                OD.Binding next = null;
+                for(Future<OD.Binding> result : results)
+                    if(result.get()!=null)
+                        next = result.get();
+                assertNotNull(next);
+                assertEquals(winner.get(), OD.get(Foo.class, "y").version);
+                current[0] = next;
+            }
+        }
+        finally
+        {
+            threads.shutdown();
+            assertTrue(threads.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertTrue(OD.unbind(current[0]));
+        try
+        {
+            OD.get(Foo.class, "y");
+            fail();
+        }
+        catch (OD.NotFoundException e)
+        {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package bayou.od;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+// sealing is permanent; this class runs in its own JVM, see pom.xml
+public class SealRaceTest
+{
+    public static class Foo
+    {
+        final String tag;
+
+        public Foo(String tag)
+        {
+            this.tag = tag;
+        }
+    }
+
+    @Test
+    public void sealWhileBindingAndGetting() throws Exception
+    {
+        final int BINDERS = 4, READERS = 4;
+        final Foo base = new Foo("base");
+        OD.bind(Foo.class).tags("base").to(base);
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final CyclicBarrier barrier = new CyclicBarrier(BINDERS + READERS + 1);
+        ExecutorService threads = Executors.newFixedThreadPool(BINDERS + READERS);
+        try
+        {
+            // each binder binds until the list is sealed; returns the number of its successful bindings
+            List<Future<Integer>> binders = new ArrayList<Future<Integer>>();
+            for(int b=0; b<BINDERS; b++)
+            {
+                final String id = "binder"+b+":";
+                binders.add(threads.submit(new Callable<Integer>()
+                {
+                    public Integer call() throws Exception
+                    {
+                        barrier.await();
+                        for(int i=0; ; i++)
+                        {
+                            try
+                            {
+                                OD.bind(Foo.class).tags(id+i).to(new Foo(id+i));
+                            }
+                            catch (IllegalStateException e) // sealed
+                            {
+                                return i;
+                            }
+                            OD.get(Foo.class, id+i); // populates the cache, which is carried over by seal()
+                        }
+                    }
+                }));
+            }
+            List<Future<Boolean>> readers = new ArrayList<Future<Boolean>>();
+            for(int r=0; r<READERS; r++)
+            {
+                readers.add(threads.submit(new Callable<Boolean>()
+                {
+                    public Boolean call() throws Exception
+                    {
+                        barrier.await();
+                        while(!done.get())
+                            if(OD.get(Foo.class, "base")!=base)
+                                return false;
+                        return true;
+                    }
+                }));
+            }
+
+            barrier.await();
+            Thread.sleep(50);
+            OD.seal();
+            OD.seal(); // no-op
+            done.set(true);
+
+            for(Future<Boolean> reader : readers)
+                assertTrue(reader.get());
+            for(int b=0; b<BINDERS; b++)
+            {
+                String id = "binder"+b+":";
+                int n = binders.get(b).get();
+                for(int i=0; i<n; i++) // every successful binding survives sealing
+                    assertEquals(id+i, OD.get(Foo.class, id+i).tag);
+                try
+                {
+                    OD.get(Foo.class, id+n); // the failed binding was not added
+                    fail();
+                }
+                catch (OD.NotFoundException e)
+                {
+                    // expected
+                }
+            }
+        }
+        finally
+        {
+            threads.shutdown();
+            assertTrue(threads.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertNotNull(GlobalBindings.sealed);
+    }
+}